@@ -1,6 +1,8 @@
 package dev.yin;
 
+import dev.yin.process.Options;
 import dev.yin.process.ParentProcess;
+import dev.yin.lib.Threads;
 /**
  * Hello world!
  *
@@ -12,15 +14,24 @@ public class App
         // parse args
         int childProcessCount = Integer.parseInt(args[0]);
         int threadCount = Integer.parseInt(args[1]);
+        Options options = Options.parse(args, 2);
+        Threads.configure(options.get("executor", "platform"));
+
+        // Each generator thread emits every 10 ms, unless --rate (values/s per child) is given
+        long generateIntervalNs = options.has("rate")
+            ? (long) Math.max(1, threadCount * 1e9 / options.getRate("rate"))
+            : 10_000_000L;
 
         // setup shared memory, config, etc.
         ParentProcess parent = new ParentProcess(
             1000, 
             childProcessCount, 
             threadCount, 
-            10);
+            generateIntervalNs,
+            options);
 
         // start the parent logic
         parent.start();
+        Threads.keepAlive();
     }
 }
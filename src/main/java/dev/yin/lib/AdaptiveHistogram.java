@@ -0,0 +1,253 @@
+package dev.yin.lib;
+
+import java.util.Arrays;
+
+/**
+ * Counts per value in {@code [0, domain)}, stored dense or sparse depending
+ * on how many distinct values were seen.
+ * <p>
+ * Small domains are always a dense {@code long[]}. Large domains start as an
+ * open-addressing {@code int → long} map (linear probing, no boxing) and
+ * switch to dense once the number of non-zero buckets makes the map about as
+ * large as the array would be. Merging and iterating only touch non-zero
+ * buckets while sparse, so a tick with a few thousand distinct IDs out of
+ * millions costs a few thousand operations.
+ * <p>
+ * Not thread-safe: every instance is owned by one thread at a time.
+ */
+public final class AdaptiveHistogram {
+    /** Domains up to this size are dense from the start. */
+    public static final int DENSE_DOMAIN = 4096;
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int domain;
+    private final int denseThreshold; // switch to dense above this many distinct values
+
+    // Dense mode
+    private long[] dense;
+
+    // Sparse mode
+    private int[] keys;
+    private long[] values;
+    private int size;
+
+    @FunctionalInterface
+    public interface BucketConsumer {
+        void accept(int value, long count);
+    }
+
+    public AdaptiveHistogram(int domain) {
+        this.domain = domain;
+        this.denseThreshold = domain / 8;
+        if (domain <= DENSE_DOMAIN) {
+            dense = new long[domain];
+        } else {
+            keys = new int[INITIAL_CAPACITY];
+            values = new long[INITIAL_CAPACITY];
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+
+    /** Dense histogram over {@code counts.length} values, copying {@code counts}. */
+    public static AdaptiveHistogram of(long[] counts) {
+        AdaptiveHistogram h = new AdaptiveHistogram(counts.length);
+        for (int v = 0; v < counts.length; v++) {
+            if (counts[v] != 0) {
+                h.add(v, counts[v]);
+            }
+        }
+        return h;
+    }
+
+    public int domain() {
+        return domain;
+    }
+
+    public boolean isDense() {
+        return dense != null;
+    }
+
+    public void increment(int value) {
+        add(value, 1);
+    }
+
+    public void add(int value, long count) {
+        if (dense != null) {
+            dense[value] += count;
+            return;
+        }
+        if (value < 0 || value >= domain) {
+            throw new ArrayIndexOutOfBoundsException("Value " + value + " outside domain " + domain);
+        }
+        int mask = keys.length - 1;
+        int i = hash(value) & mask;
+        while (true) {
+            int k = keys[i];
+            if (k == value) {
+                values[i] += count;
+                return;
+            }
+            if (k == EMPTY) {
+                keys[i] = value;
+                values[i] = count;
+                if (++size > denseThreshold) {
+                    toDense();
+                } else if (size * 2 > keys.length) {
+                    resize(keys.length * 2);
+                }
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public long get(int value) {
+        if (dense != null) {
+            return dense[value];
+        }
+        int mask = keys.length - 1;
+        int i = hash(value) & mask;
+        int k;
+        while ((k = keys[i]) != EMPTY) {
+            if (k == value) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return 0;
+    }
+
+    /** Adds every count of {@code other} into this histogram. */
+    public void addAll(AdaptiveHistogram other) {
+        if (dense != null && other.dense != null) {
+            long[] d = dense;
+            long[] o = other.dense;
+            for (int v = 0; v < o.length; v++) {
+                d[v] += o[v];
+            }
+            return;
+        }
+        other.forEach(this::add);
+    }
+
+    /**
+     * Calls {@code consumer} for every non-zero bucket: in ascending order
+     * when dense, in table order when sparse.
+     */
+    public void forEach(BucketConsumer consumer) {
+        if (dense != null) {
+            for (int v = 0; v < dense.length; v++) {
+                if (dense[v] != 0) {
+                    consumer.accept(v, dense[v]);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && values[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /** Non-zero buckets, ascending. */
+    public int[] sortedValues() {
+        int[] out = new int[cardinality()];
+        int[] n = { 0 };
+        forEach((v, c) -> out[n[0]++] = v);
+        if (dense == null) {
+            Arrays.sort(out);
+        }
+        return out;
+    }
+
+    /** Number of non-zero buckets. */
+    public int cardinality() {
+        int n = 0;
+        if (dense != null) {
+            for (long c : dense) {
+                if (c != 0) n++;
+            }
+            return n;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && values[i] != 0) n++;
+        }
+        return n;
+    }
+
+    public long total() {
+        long total = 0;
+        if (dense != null) {
+            for (long c : dense) {
+                total += c;
+            }
+            return total;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) total += values[i];
+        }
+        return total;
+    }
+
+    /** Writes all counts into {@code out}, indexed by value. */
+    public void copyTo(long[] out) {
+        if (dense != null) {
+            System.arraycopy(dense, 0, out, 0, dense.length);
+            return;
+        }
+        Arrays.fill(out, 0);
+        forEach((v, c) -> out[v] = c);
+    }
+
+    /** Resets all counts; the mode (dense or sparse) is kept. */
+    public void clear() {
+        if (dense != null) {
+            Arrays.fill(dense, 0);
+            return;
+        }
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void toDense() {
+        long[] d = new long[domain];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                d[keys[i]] = values[i];
+            }
+        }
+        dense = d;
+        keys = null;
+        values = null;
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int k = oldKeys[j];
+            if (k == EMPTY) {
+                continue;
+            }
+            int i = hash(k) & mask;
+            while (keys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = k;
+            values[i] = oldValues[j];
+        }
+    }
+
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9; // Fibonacci hashing spreads consecutive IDs
+        return h ^ (h >>> 16);
+    }
+}
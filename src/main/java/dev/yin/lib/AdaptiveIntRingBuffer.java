@@ -0,0 +1,540 @@
+package dev.yin.lib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SPSC {@code int} ring buffer with a selectable {@link OverflowPolicy} and,
+ * optionally, a capacity that follows the observed load.
+ *
+ * <h3>Rings</h3>
+ * Values live in a chain of {@link IntRingBuffer}-style rings. The producer
+ * only ever writes to the last one; to resize it starts a new ring of the
+ * target capacity and links it from the current one, which seals it. The
+ * consumer drains a sealed ring completely before moving to the next, so
+ * resizing never copies or loses a value, and both sides stay wait-free.
+ *
+ * <h3>Adaptive Sizing</h3>
+ * After every drain the consumer compares what it drained with the current
+ * capacity: half full or more doubles the target (up to the maximum), under
+ * an eighth on {@value #SHRINK_AFTER} drains in a row halves it (down to
+ * the minimum). The producer picks the new target up on its next batch, or
+ * at the latest when the ring is full, before applying the policy.
+ *
+ * <h3>Overflow Policies</h3>
+ * <ul>
+ *   <li>{@code DROP_NEWEST} — the write fails, as in {@link IntRingBuffer}.</li>
+ *   <li>{@code OVERWRITE_OLDEST} — writes always succeed. The producer
+ *   announces each write in a claim sequence before storing it; the consumer
+ *   copies a chunk, then re-reads the claim and discards every value the
+ *   producer may have overwritten meanwhile ({@link #overwritten()}).</li>
+ *   <li>{@code SPILL} — values that do not fit go to a chain of extra
+ *   segments, up to a limit ({@link #spilled()}).</li>
+ *   <li>{@code BLOCK} — the producer runs the buffer's {@code onBlock}
+ *   callback, which asks the consumer to drain now instead of at its next
+ *   scheduled drain, then spins, yields and parks until space is free
+ *   ({@link #paused()}). It only gives up after {@link #MAX_BLOCK_NS} if the
+ *   consumer does not respond, so a producer stopped before the last drain
+ *   cannot hang forever.</li>
+ * </ul>
+ *
+ * <h3>Thread Safety</h3>
+ * Safe <b>only</b> for one thread calling the {@code write} methods and one
+ * thread calling the {@code drainTo} methods.
+ */
+public class AdaptiveIntRingBuffer implements IntBuffer {
+
+    public static final long MAX_BLOCK_NS = 100_000_000L;
+    private static final int SHRINK_AFTER = 4;
+    private static final int RESIZE_CHECK_MASK = 1023; // single writes look at the target every 1024 values
+    private static final int CHUNK = 256;
+
+    private static final int PAD = 8; // 8 longs = one 64-byte cache line
+    private static final int WRITE = PAD;           // producer line
+    private static final int CACHED_READ = PAD + 1; // producer line
+    private static final int CLAIM = PAD + 2;       // producer line, OVERWRITE_OLDEST only
+    private static final int READ = PAD * 2;        // consumer line
+
+    // Statistics: [pad][spilled, paused][pad][overwritten][pad]
+    private static final int SPILLED = PAD;
+    private static final int PAUSED = PAD + 1;
+    private static final int OVERWRITTEN = PAD * 2;
+
+    private static final VarHandle SEQ = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final class Ring {
+        final int[] buffer;
+        final int mask;
+        // [pad][writeIndex, cachedReadIndex, claimIndex][pad][readIndex][pad]
+        final long[] seq = new long[PAD * 4];
+        volatile Ring next; // set once the producer moved on: nothing more is written here
+
+        Ring(int capacity) {
+            this.buffer = new int[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    private final OverflowPolicy policy;
+    private final boolean adaptive;
+    private final int minCapacity;
+    private final int maxCapacity;
+    private final SpillChain spill;
+    private final Runnable onBlock;
+    private final long[] stats = new long[PAD * 4];
+
+    private volatile int targetCapacity; // written by the consumer, followed by the producer
+
+    // Producer only
+    private Ring writeRing;
+
+    // Consumer only
+    private Ring readRing;
+    private final int[] scratch = new int[CHUNK];
+    private int lowFills = 0;
+
+    /**
+     * @param capacity    initial capacity, rounded up to a power of two
+     * @param maxCapacity largest capacity adaptive sizing may grow to; equal to
+     *                    {@code capacity} for a fixed size
+     * @param spillSegments most extra segments of {@code capacity} values for {@code SPILL}
+     */
+    public AdaptiveIntRingBuffer(int capacity, OverflowPolicy policy, int maxCapacity, int spillSegments) {
+        this(capacity, policy, maxCapacity, spillSegments, () -> { });
+    }
+
+    /**
+     * @param onBlock run by a {@code BLOCK} producer that has to wait: should
+     *                make the consumer drain soon; must not block
+     */
+    public AdaptiveIntRingBuffer(int capacity, OverflowPolicy policy, int maxCapacity, int spillSegments,
+                                 Runnable onBlock) {
+        int cap = powerOfTwo(capacity);
+        this.policy = policy;
+        this.maxCapacity = Math.max(cap, powerOfTwo(maxCapacity));
+        this.minCapacity = Math.min(cap, 1024);
+        this.adaptive = this.maxCapacity > cap;
+        this.targetCapacity = cap;
+        this.writeRing = this.readRing = new Ring(cap);
+        this.spill = policy == OverflowPolicy.SPILL ? new SpillChain(cap, spillSegments) : null;
+        this.onBlock = onBlock;
+    }
+
+    @Override
+    public boolean write(int value) {
+        Ring r = writeRing;
+        long[] seq = r.seq;
+        long wi = seq[WRITE]; // only this thread writes it
+        if ((wi & RESIZE_CHECK_MASK) == 0 && adaptive) {
+            r = resized(r);
+            seq = r.seq;
+            wi = seq[WRITE];
+        }
+
+        if (policy == OverflowPolicy.OVERWRITE_OLDEST) {
+            SEQ.setOpaque(seq, CLAIM, wi + 1);
+            VarHandle.storeStoreFence(); // the claim is visible before the slot changes
+            r.buffer[(int) (wi & r.mask)] = value;
+            SEQ.setRelease(seq, WRITE, wi + 1);
+            return true;
+        }
+
+        if (wi - seq[CACHED_READ] >= r.buffer.length) {
+            long ri = (long) SEQ.getAcquire(seq, READ);
+            seq[CACHED_READ] = ri;
+            if (wi - ri >= r.buffer.length) {
+                return overflow(r, value);
+            }
+        }
+
+        r.buffer[(int) (wi & r.mask)] = value;
+        SEQ.setRelease(seq, WRITE, wi + 1);
+        return true;
+    }
+
+    @Override
+    public int write(int[] values, int offset, int length) {
+        Ring r = adaptive ? resized(writeRing) : writeRing;
+
+        if (policy == OverflowPolicy.OVERWRITE_OLDEST) {
+            long wi = r.seq[WRITE];
+            int cap = r.buffer.length;
+            int m = Math.min(length, cap); // earlier values of a longer batch would be overwritten at once
+            SEQ.setOpaque(r.seq, CLAIM, wi + length);
+            VarHandle.storeStoreFence();
+            copyIn(r, wi + length - m, values, offset + length - m, m);
+            SEQ.setRelease(r.seq, WRITE, wi + length);
+            return length;
+        }
+
+        int n = put(r, values, offset, length);
+        if (n == length) {
+            return n;
+        }
+        if (adaptive) {
+            Ring grown = resized(r);
+            if (grown != r) {
+                r = grown;
+                n += put(r, values, offset + n, length - n);
+                if (n == length) {
+                    return n;
+                }
+            }
+        }
+
+        switch (policy) {
+            case SPILL: {
+                int s = spill.write(values, offset + n, length - n);
+                add(SPILLED, s);
+                return n + s;
+            }
+            case BLOCK:
+                while (n < length) {
+                    if (!awaitSpace(r)) {
+                        return n;
+                    }
+                    r = adaptive ? resized(writeRing) : writeRing;
+                    n += put(r, values, offset + n, length - n);
+                }
+                return n;
+            default:
+                return n;
+        }
+    }
+
+    @Override
+    public int drainTo(long[] histogram) {
+        return drain(histogram);
+    }
+
+    @Override
+    public int drainTo(int[] histogram) {
+        return drain(histogram);
+    }
+
+    @Override
+    public int drainTo(AdaptiveHistogram histogram) {
+        return drain(histogram);
+    }
+
+    @Override
+    public long overwritten() {
+        return (long) SEQ.getAcquire(stats, OVERWRITTEN);
+    }
+
+    @Override
+    public long spilled() {
+        return (long) SEQ.getAcquire(stats, SPILLED);
+    }
+
+    @Override
+    public long paused() {
+        return (long) SEQ.getAcquire(stats, PAUSED);
+    }
+
+    @Override
+    public int capacity() {
+        return targetCapacity;
+    }
+
+    // ---- producer side ----
+
+    // The ring to write to: a new one if the consumer changed the target capacity
+    private Ring resized(Ring r) {
+        int target = targetCapacity;
+        if (target == r.buffer.length) {
+            return r;
+        }
+        Ring next = new Ring(target);
+        r.next = next; // after every WRITE release on r: the consumer sees all of r first
+        writeRing = next;
+        return next;
+    }
+
+    private boolean overflow(Ring r, int value) {
+        if (adaptive && resized(r) != r) {
+            return write(value); // a fresh ring has room
+        }
+        switch (policy) {
+            case SPILL:
+                if (spill.write(value)) {
+                    add(SPILLED, 1);
+                    return true;
+                }
+                return false;
+            case BLOCK:
+                return awaitSpace(r) && write(value);
+            default:
+                return false;
+        }
+    }
+
+    // Stores as many values as fit into r, returns how many
+    private int put(Ring r, int[] values, int offset, int length) {
+        long[] seq = r.seq;
+        long wi = seq[WRITE];
+        long free = r.buffer.length - (wi - seq[CACHED_READ]);
+        if (free < length) {
+            long ri = (long) SEQ.getAcquire(seq, READ);
+            seq[CACHED_READ] = ri;
+            free = r.buffer.length - (wi - ri);
+        }
+        int n = (int) Math.min(length, free);
+        copyIn(r, wi, values, offset, n);
+        SEQ.setRelease(seq, WRITE, wi + n);
+        return n;
+    }
+
+    private static void copyIn(Ring r, long position, int[] values, int offset, int n) {
+        int start = (int) (position & r.mask);
+        int first = Math.min(n, r.buffer.length - start); // up to the end of the array
+        System.arraycopy(values, offset, r.buffer, start, first);
+        System.arraycopy(values, offset + first, r.buffer, 0, n - first); // wrapped part
+    }
+
+    /**
+     * BLOCK: asks for an early drain and waits until r has room or is being
+     * resized. {@code false} after {@link #MAX_BLOCK_NS} or when interrupted.
+     */
+    private boolean awaitSpace(Ring r) {
+        add(PAUSED, 1);
+        onBlock.run();
+        long[] seq = r.seq;
+        long start = System.nanoTime();
+        for (int spins = 0; ; spins++) {
+            long ri = (long) SEQ.getAcquire(seq, READ);
+            seq[CACHED_READ] = ri;
+            if (seq[WRITE] - ri < r.buffer.length || (adaptive && targetCapacity != r.buffer.length)) {
+                return true;
+            }
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else if (spins < 200) {
+                Thread.yield();
+            } else {
+                if (Thread.currentThread().isInterrupted() || System.nanoTime() - start > MAX_BLOCK_NS) {
+                    return false;
+                }
+                LockSupport.parkNanos(50_000);
+            }
+        }
+    }
+
+    // ---- consumer side ----
+
+    private int drain(Object histogram) {
+        long n = 0;
+        while (true) {
+            Ring r = readRing;
+            n += drainRing(r, histogram);
+            if (r.next == null) {
+                break;
+            }
+            n += drainRing(r, histogram); // written before it was sealed
+            readRing = r.next;
+        }
+        if (spill != null) {
+            n += spill.drainTo(histogram);
+        }
+        if (adaptive) {
+            adapt(n); // spilled values are load the ring was too small for
+        }
+        return (int) n;
+    }
+
+    private long drainRing(Ring r, Object histogram) {
+        long[] seq = r.seq;
+        long wi = (long) SEQ.getAcquire(seq, WRITE);
+        long ri = seq[READ]; // only this thread writes it
+        int cap = r.buffer.length;
+        long n = 0;
+
+        if (policy != OverflowPolicy.OVERWRITE_OLDEST) {
+            for (long i = ri; i < wi; ) {
+                int off = (int) (i & r.mask);
+                int len = (int) Math.min(wi - i, cap - off);
+                count(histogram, r.buffer, off, off + len);
+                i += len;
+            }
+            SEQ.setRelease(seq, READ, wi); // hand the slots back to the producer
+            return wi - ri;
+        }
+
+        long lost = 0;
+        if (wi - ri > cap) { // already overwritten
+            lost += wi - cap - ri;
+            ri = wi - cap;
+        }
+        for (long i = ri; i < wi; ) {
+            int off = (int) (i & r.mask);
+            int len = (int) Math.min(Math.min(CHUNK, wi - i), cap - off);
+            System.arraycopy(r.buffer, off, scratch, 0, len);
+            VarHandle.acquireFence(); // the copy is done before the claim is read
+            long safe = (long) SEQ.getAcquire(seq, CLAIM) - cap; // positions below may have been overwritten
+            int skip = (int) Math.max(0, Math.min(len, safe - i));
+            count(histogram, scratch, skip, len);
+            lost += skip;
+            n += len - skip;
+            i += len;
+        }
+        SEQ.setRelease(seq, READ, wi);
+        if (lost > 0) {
+            SEQ.setRelease(stats, OVERWRITTEN, stats[OVERWRITTEN] + lost);
+        }
+        return n;
+    }
+
+    // Consumer only: adjusts the target capacity from what one drain returned
+    private void adapt(long drained) {
+        int cap = targetCapacity;
+        if (drained * 2 >= cap && cap < maxCapacity) {
+            targetCapacity = cap * 2;
+            lowFills = 0;
+        } else if (drained * 8 < cap && cap > minCapacity) {
+            if (++lowFills >= SHRINK_AFTER) {
+                targetCapacity = cap / 2;
+                lowFills = 0;
+            }
+        } else {
+            lowFills = 0;
+        }
+    }
+
+    // Owner of the counter only (producer for SPILLED/PAUSED)
+    private void add(int stat, long delta) {
+        SEQ.setRelease(stats, stat, stats[stat] + delta);
+    }
+
+    static void count(Object histogram, int[] values, int from, int to) {
+        if (histogram instanceof AdaptiveHistogram) {
+            AdaptiveHistogram h = (AdaptiveHistogram) histogram;
+            for (int i = from; i < to; i++) {
+                h.increment(values[i]);
+            }
+        } else if (histogram instanceof long[]) {
+            long[] h = (long[]) histogram;
+            for (int i = from; i < to; i++) {
+                h[values[i]]++;
+            }
+        } else {
+            int[] h = (int[]) histogram;
+            for (int i = from; i < to; i++) {
+                h[values[i]]++;
+            }
+        }
+    }
+
+    private static int powerOfTwo(int requested) {
+        int cap = 1;
+        while (cap < requested) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    /**
+     * SPSC chain of fixed-size overflow segments. The producer appends
+     * segments (up to {@code maxSegments} live at once), the consumer drops
+     * them once read.
+     */
+    private static final class SpillChain {
+        private static final class Segment {
+            final int[] values;
+            volatile int count; // written by the producer only
+            volatile Segment next;
+            boolean released; // consumer only: fully read, no longer counted against the limit
+
+            Segment(int size) {
+                this.values = new int[size];
+            }
+        }
+
+        private final int segmentSize;
+        private final int maxSegments;
+        private volatile int freed = 0; // consumer-written
+
+        // Producer only
+        private Segment tail;
+        private int allocated = 0;
+
+        // Consumer only
+        private Segment head;
+        private int read = 0;
+
+        SpillChain(int segmentSize, int maxSegments) {
+            this.segmentSize = segmentSize;
+            this.maxSegments = maxSegments;
+            this.head = this.tail = new Segment(0); // empty sentinel, never counted
+        }
+
+        boolean write(int value) {
+            Segment t = room();
+            if (t == null) {
+                return false;
+            }
+            int c = t.count;
+            t.values[c] = value;
+            t.count = c + 1; // publish the value
+            return true;
+        }
+
+        int write(int[] values, int offset, int length) {
+            int n = 0;
+            while (n < length) {
+                Segment t = room();
+                if (t == null) {
+                    break;
+                }
+                int c = t.count;
+                int k = Math.min(length - n, t.values.length - c);
+                System.arraycopy(values, offset + n, t.values, c, k);
+                t.count = c + k;
+                n += k;
+            }
+            return n;
+        }
+
+        // The tail segment with room left, a new one, or null at the limit
+        private Segment room() {
+            Segment t = tail;
+            if (t.count < t.values.length) {
+                return t;
+            }
+            if (allocated - freed >= maxSegments) {
+                return null;
+            }
+            Segment s = new Segment(segmentSize);
+            allocated++;
+            t.next = s;
+            tail = s;
+            return s;
+        }
+
+        int drainTo(Object histogram) {
+            int n = 0;
+            while (true) {
+                Segment h = head;
+                int c = h.count;
+                count(histogram, h.values, read, c);
+                n += c - read;
+                read = c;
+                if (c < h.values.length) {
+                    return n; // still being written
+                }
+                if (!h.released) { // may stay the producer's tail, but holds nothing unread
+                    h.released = true;
+                    if (h.values.length > 0) {
+                        freed = freed + 1;
+                    }
+                }
+                Segment next = h.next;
+                if (next == null) {
+                    return n;
+                }
+                head = next;
+                read = 0;
+            }
+        }
+    }
+}
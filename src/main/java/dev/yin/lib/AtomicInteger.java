@@ -1,9 +1,20 @@
 package dev.yin.lib;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 public class AtomicInteger {
 
-    private int value;
-    private final Object lock = new Object();
+    private static final VarHandle VALUE;
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(AtomicInteger.class, "value", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile int value;
 
     public AtomicInteger() {
         this(0);
@@ -14,33 +25,26 @@ public class AtomicInteger {
     }
 
     public void set(int newValue) {
-        synchronized (lock) {
-            this.value = newValue;
-        }
+        value = newValue;
     }
 
     public int get() {
-        synchronized (lock) {
-            return value;
-        }
+        return value;
     }
 
     public int increment() {
-        synchronized (lock) {
-            return ++value;
-        }
+        return (int) VALUE.getAndAdd(this, 1) + 1;
     }
 
     public int decrement() {
-        synchronized (lock) {
-            return --value;
-        }
+        return (int) VALUE.getAndAdd(this, -1) - 1;
     }
 
     public int add(int delta) {
-        synchronized (lock) {
-            value += delta;
-            return value;
-        }
+        return (int) VALUE.getAndAdd(this, delta) + delta;
+    }
+
+    public boolean compareAndSet(int expected, int newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,147 @@
+package dev.yin.lib;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Length-prefixed binary framing of the IPC messages.
+ *
+ * Frame:
+ *   int   L       — number of bytes that follow
+ *   byte  type    — READY / COUNT / LOG
+ *   int   P       — process number
+ *   long  tick    — tick id (0 when not applicable)
+ *   ...   payload
+ *
+ * Payload:
+ *   READY — none
+ *   COUNT — varint domain, varint n, then n pairs (varint value, varint count)
+ *   LOG   — int thread (-1 if none), int length, UTF-8 bytes
+ *
+ * Counts are unsigned LEB128 varints and only non-zero buckets are sent, so
+ * a typical per-tick count fits in two bytes and a digit COUNT frame in
+ * ~60 bytes, while a sparse tick over a large domain stays proportional to
+ * the values seen.
+ */
+public final class BinaryCodec {
+    public static final byte READY = 1;
+    public static final byte COUNT = 2;
+    public static final byte LOG = 3;
+
+    public static final int HEADER_BYTES = 1 + 4 + 8;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Encodes a frame (including its length prefix) into {@code buf}.
+     */
+    public static void encode(ReadyMessage msg, ByteBuffer buf) {
+        int start = beginFrame(buf, READY, msg.getProcess(), 0);
+        endFrame(buf, start);
+    }
+
+    public static void encode(CountMessage msg, ByteBuffer buf) {
+        int start = beginFrame(buf, COUNT, msg.getProcess(), msg.getTick());
+        AdaptiveHistogram counts = msg.getCounts();
+        putVarLong(buf, counts.domain());
+        putVarLong(buf, counts.cardinality());
+        counts.forEach((v, c) -> {
+            putVarLong(buf, v);
+            putVarLong(buf, c);
+        });
+        endFrame(buf, start);
+    }
+
+    public static void encode(LogMessage msg, ByteBuffer buf) {
+        int start = beginFrame(buf, LOG, msg.getProcess(), 0);
+        byte[] text = msg.getMsg().getBytes(StandardCharsets.UTF_8);
+        buf.putInt(msg.getThread() == null ? -1 : msg.getThread());
+        buf.putInt(text.length);
+        buf.put(text);
+        endFrame(buf, start);
+    }
+
+    /**
+     * Upper bound of the encoded size of {@code msg}, used to size buffers.
+     */
+    public static int maxFrameBytes(LogMessage msg) {
+        return 4 + HEADER_BYTES + 8 + msg.getMsg().length() * 3;
+    }
+
+    public static int maxFrameBytes(AdaptiveHistogram counts) {
+        return 4 + HEADER_BYTES + 5 + 5 + counts.cardinality() * (5 + 10);
+    }
+
+    /**
+     * Decodes one frame body (everything after the length prefix) and
+     * dispatches it to {@code handler}.
+     */
+    public static void decode(ByteBuffer frame, MessageHandler handler) {
+        byte type = frame.get();
+        int process = frame.getInt();
+        long tick = frame.getLong();
+
+        switch (type) {
+            case READY:
+                handler.onReady(new ReadyMessage(process));
+                return;
+
+            case COUNT: {
+                AdaptiveHistogram counts = new AdaptiveHistogram((int) getVarLong(frame));
+                int n = (int) getVarLong(frame);
+                for (int i = 0; i < n; i++) {
+                    int value = (int) getVarLong(frame);
+                    counts.add(value, getVarLong(frame));
+                }
+                handler.onCount(new CountMessage(process, tick, counts));
+                return;
+            }
+
+            case LOG: {
+                int thread = frame.getInt();
+                byte[] text = new byte[frame.getInt()];
+                frame.get(text);
+                handler.onLog(new LogMessage(process, thread < 0 ? null : thread,
+                    new String(text, StandardCharsets.UTF_8)));
+                return;
+            }
+
+            default:
+                throw new IllegalStateException("Unknown frame type: " + type);
+        }
+    }
+
+    private static int beginFrame(ByteBuffer buf, byte type, int process, long tick) {
+        int start = buf.position();
+        buf.putInt(0); // length, patched by endFrame
+        buf.put(type);
+        buf.putInt(process);
+        buf.putLong(tick);
+        return start;
+    }
+
+    private static void endFrame(ByteBuffer buf, int start) {
+        buf.putInt(start, buf.position() - start - 4);
+    }
+
+    public static void putVarLong(ByteBuffer buf, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    public static long getVarLong(ByteBuffer buf) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return v;
+    }
+}
@@ -0,0 +1,35 @@
+package dev.yin.lib;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads {@link BinaryCodec} frames from a child's stream into a reused buffer.
+ */
+public class BinaryMessageReader implements MessageReader {
+    private final DataInputStream in;
+    private byte[] frame = new byte[256];
+
+    public BinaryMessageReader(DataInputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public boolean readNext(MessageHandler handler) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+
+        if (frame.length < length) {
+            frame = new byte[length];
+        }
+        in.readFully(frame, 0, length);
+        BinaryCodec.decode(ByteBuffer.wrap(frame, 0, length), handler);
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package dev.yin.lib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes messages as {@link BinaryCodec} frames.
+ * <p>
+ * Frames are encoded into one reused {@link ByteBuffer} and written with a
+ * single {@code write} + {@code flush}, under a lock so frames from
+ * different threads never interleave.
+ */
+public class BinaryMessageWriter implements MessageWriter {
+    private final OutputStream out;
+    private ByteBuffer buf = ByteBuffer.allocate(256);
+
+    public BinaryMessageWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void send(ReadyMessage msg) {
+        buf.clear();
+        BinaryCodec.encode(msg, buf);
+        writeFrame();
+    }
+
+    @Override
+    public synchronized void send(CountMessage msg) {
+        ensureCapacity(BinaryCodec.maxFrameBytes(msg.getCounts()));
+        BinaryCodec.encode(msg, buf);
+        writeFrame();
+    }
+
+    @Override
+    public synchronized void send(LogMessage msg) {
+        ensureCapacity(BinaryCodec.maxFrameBytes(msg));
+        BinaryCodec.encode(msg, buf);
+        writeFrame();
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buf.capacity() < bytes) {
+            buf = ByteBuffer.allocate(bytes);
+        }
+        buf.clear();
+    }
+
+    private void writeFrame() {
+        try {
+            out.write(buf.array(), 0, buf.position());
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -3,7 +3,11 @@ package dev.yin.lib;
 public enum Command {
     START,
     COUNT,
-    STOP;
+    STOP,
+    ASSIGN,
+    SCALE,
+    RETIRE,
+    CHILDREN;
 
     public static Command fromString(String s) {
         return Command.valueOf(s.trim().toUpperCase());
@@ -4,45 +4,120 @@ import java.util.Map;
 
 public class CountMessage {
     private final int process;
-    private final Map<Integer, Integer> counts;
+    private final long tick;
+    private final AdaptiveHistogram counts;
 
-    public CountMessage(int process, Map<Integer, Integer> counts) {
+    public CountMessage(int process, long[] counts) {
+        this(process, 0, counts);
+    }
+
+    public CountMessage(int process, long tick, long[] counts) {
+        this(process, tick, AdaptiveHistogram.of(counts));
+    }
+
+    public CountMessage(int process, long tick, AdaptiveHistogram counts) {
         this.process = process;
+        this.tick = tick;
         this.counts = counts;
     }
 
+    public CountMessage(int process, Map<Integer, Integer> counts) {
+        this(process, 0, new AdaptiveHistogram(10));
+        for (int i = 0; i < 10; i++) {
+            this.counts.add(i, counts.getOrDefault(i, 0));
+        }
+    }
+
     /**
      * Compact IPC representation of this process's count results.
      *
      * Format:
-     *   COUNT|P|c0,c1,c2,c3,c4,c5,c6,c7,c8,c9|T
+     *   COUNT|P|K|D|v:c,v:c,...|T
      *
      * Where:
      *   COUNT  — message type
      *   P      — process number
-     *   c0..c9 — counts of integers 0 through 9
-     *   T      — total count (sum of all c0..c9)
+     *   K      — tick id from the COUNT command being answered
+     *   D      — value domain, values are in [0, D)
+     *   v:c    — count c of value v, non-zero buckets only
+     *   T      — total count (sum of all c)
      *
      * Example:
-     *   COUNT|1|9,4,7,20,12,4,19,9,10,8|102
+     *   COUNT|1|42|10|0:9,1:4,2:7,3:20,4:12,5:4,6:19,7:9,8:10,9:8|102
      *
-     * This format is compact, easy to parse, and optimized for fast
-     * inter‑process communication.
+     * Only non-zero buckets are written, so a large, sparsely hit domain
+     * costs no more than the values actually seen.
      */
     public String toIpc() {
         StringBuilder sb = new StringBuilder();
         sb.append("MESSAGE|COUNT|");
         sb.append(process).append("|");
+        sb.append(tick).append("|");
+        sb.append(counts.domain()).append("|");
 
-        int total = 0;
-        for (int i = 0; i < 10; i++) {
-            int v = counts.getOrDefault(i, 0);
-            sb.append(v);
-            total += v;
-            if (i < 9) sb.append(",");
-        }
+        int first = sb.length();
+        long[] total = { 0 };
+        counts.forEach((v, c) -> {
+            if (sb.length() > first) sb.append(",");
+            sb.append(v).append(':').append(c);
+            total[0] += c;
+        });
 
-        sb.append("|").append(total);
+        sb.append("|").append(total[0]);
         return sb.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses a line produced by {@link #toIpc()}.
+     * <p>
+     * Scans the characters directly instead of using {@code String.split}
+     * and {@code Integer.parseInt}, since the parent runs this for every
+     * child on every tick.
+     */
+    public static CountMessage fromIpc(String line) {
+        int pos = "MESSAGE|COUNT|".length();
+        int process = 0;
+        char c;
+        while ((c = line.charAt(pos++)) != '|') {
+            process = process * 10 + (c - '0');
+        }
+
+        long tick = 0;
+        while ((c = line.charAt(pos++)) != '|') {
+            tick = tick * 10 + (c - '0');
+        }
+
+        int domain = 0;
+        while ((c = line.charAt(pos++)) != '|') {
+            domain = domain * 10 + (c - '0');
+        }
+
+        AdaptiveHistogram counts = new AdaptiveHistogram(domain);
+        while (line.charAt(pos) != '|') {
+            int v = 0;
+            while ((c = line.charAt(pos++)) != ':') {
+                v = v * 10 + (c - '0');
+            }
+            long n = 0;
+            while ((c = line.charAt(pos)) != ',' && c != '|') {
+                n = n * 10 + (c - '0');
+                pos++;
+            }
+            if (c == ',') pos++;
+            counts.add(v, n);
+        }
+        return new CountMessage(process, tick, counts);
+    }
+
+    public int getProcess() {
+        return process;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public AdaptiveHistogram getCounts() {
+        return counts;
+    }
+}
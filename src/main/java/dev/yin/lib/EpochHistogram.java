@@ -0,0 +1,155 @@
+package dev.yin.lib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A double-buffered, generator-side histogram with an epoch swap.
+ * <p>
+ * Instead of storing every raw value until the consumer counts it, the
+ * producer increments {@code histogram[epoch & 1][value]} in place. The
+ * consumer retires the current histogram by bumping the epoch, waits until
+ * the producer is no longer inside a write on the retired side, then reads
+ * and clears it. Memory is O(buckets) regardless of the write rate, and
+ * {@link #write(int)} never drops a value.
+ *
+ * <h3>Memory Layout</h3>
+ * Both histograms and both sequence words live in padded {@code long[]}s so
+ * the producer's hot counters do not share a cache line with the consumer's
+ * epoch word or with a neighbouring histogram.
+ *
+ * <h3>Thread Safety</h3>
+ * Safe <b>only</b> for one producer thread calling {@link #write(int)} and one
+ * consumer thread calling the {@code drainTo} methods.
+ */
+public class EpochHistogram implements IntBuffer {
+
+    private static final int PAD = 8; // 8 longs = one 64-byte cache line
+    private static final int EPOCH = PAD;
+    private static final int WRITER_EPOCH = PAD * 2;
+    private static final long IDLE = -1L;
+
+    private static final VarHandle SEQ = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // [pad][epoch][pad][writerEpoch][pad]
+    private final long[] seq = new long[PAD * 3 + 1];
+    // [pad][histogram 0][pad][histogram 1][pad]
+    private final long[] counts;
+    private final int buckets;
+    private final int base0;
+    private final int base1;
+
+    /**
+     * @param buckets number of distinct values, values must be in {@code [0, buckets)}
+     */
+    public EpochHistogram(int buckets) {
+        this.buckets = buckets;
+        this.base0 = PAD;
+        this.base1 = PAD + buckets + PAD;
+        this.counts = new long[base1 + buckets + PAD];
+        seq[WRITER_EPOCH] = IDLE;
+    }
+
+    /**
+     * Counts a value into the current epoch's histogram. Never drops.
+     */
+    @Override
+    public boolean write(int value) {
+        long e = enter();
+        counts[((e & 1) == 0 ? base0 : base1) + value]++;
+        SEQ.setRelease(seq, WRITER_EPOCH, IDLE);
+        return true;
+    }
+
+    // Producer only: announce which epoch we are writing into, then re-check that
+    // the consumer has not retired it in the meantime (Dekker-style handshake).
+    private long enter() {
+        long e;
+        do {
+            e = (long) SEQ.getVolatile(seq, EPOCH);
+            SEQ.setVolatile(seq, WRITER_EPOCH, e);
+        } while ((long) SEQ.getVolatile(seq, EPOCH) != e);
+        return e;
+    }
+
+    /**
+     * Counts a whole batch under a single epoch handshake. Never drops.
+     */
+    @Override
+    public int write(int[] values, int offset, int length) {
+        long e = enter();
+        int base = (e & 1) == 0 ? base0 : base1;
+        for (int i = offset; i < offset + length; i++) {
+            counts[base + values[i]]++;
+        }
+        SEQ.setRelease(seq, WRITER_EPOCH, IDLE);
+        return length;
+    }
+
+    /**
+     * Flips the epoch and adds the retired histogram into {@code histogram}.
+     *
+     * @return number of values drained
+     */
+    @Override
+    public int drainTo(long[] histogram) {
+        int base = retire();
+        long n = 0;
+        for (int i = 0; i < buckets; i++) {
+            long c = counts[base + i];
+            histogram[i] += c;
+            n += c;
+            counts[base + i] = 0;
+        }
+        return (int) n;
+    }
+
+    /**
+     * Same as {@link #drainTo(long[])} for an {@code int} histogram.
+     */
+    @Override
+    public int drainTo(int[] histogram) {
+        int base = retire();
+        long n = 0;
+        for (int i = 0; i < buckets; i++) {
+            long c = counts[base + i];
+            histogram[i] += (int) c;
+            n += c;
+            counts[base + i] = 0;
+        }
+        return (int) n;
+    }
+
+    /**
+     * Same as {@link #drainTo(long[])} for an {@link AdaptiveHistogram}; only
+     * non-zero buckets are added, so a sparse target stays sparse.
+     */
+    @Override
+    public int drainTo(AdaptiveHistogram histogram) {
+        int base = retire();
+        long n = 0;
+        for (int i = 0; i < buckets; i++) {
+            long c = counts[base + i];
+            if (c != 0) {
+                histogram.add(i, c);
+                n += c;
+                counts[base + i] = 0;
+            }
+        }
+        return (int) n;
+    }
+
+    // Consumer only: bump the epoch and wait out a write still in flight on the old side.
+    private int retire() {
+        long e = (long) SEQ.getVolatile(seq, EPOCH);
+        SEQ.setVolatile(seq, EPOCH, e + 1);
+        for (int spins = 0; (long) SEQ.getVolatile(seq, WRITER_EPOCH) == e; spins++) {
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield(); // producer was descheduled mid-write
+            }
+        }
+        return (e & 1) == 0 ? base0 : base1;
+    }
+}
@@ -0,0 +1,85 @@
+package dev.yin.lib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Named event counters (e.g. dropped values) with one padded {@link Cell}
+ * per writing thread, summed by a reader.
+ * <p>
+ * Unlike {@link StripedCounter}, a cell has exactly one writer, so an
+ * increment is a plain read plus a {@code setRelease}, no atomic
+ * read-modify-write, and no two writers ever share a cache line. Cells are
+ * never moved: growing only copies the array of references, so a writer
+ * keeps counting into its cell while new ones are added.
+ */
+public class EventCounters {
+    private static final int PAD = 8; // 8 longs = one 64-byte cache line
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final String[] names;
+    private volatile Cell[] cells = new Cell[0];
+
+    /**
+     * One writer's counters, one per event, on their own cache line(s).
+     */
+    public static final class Cell {
+        // [pad][event 0 .. event n-1][pad]
+        private final long[] counts;
+
+        private Cell(int events) {
+            this.counts = new long[PAD + events + PAD];
+        }
+
+        /** Owner thread only. */
+        public void add(int event, long delta) {
+            int i = PAD + event;
+            COUNTS.setRelease(counts, i, counts[i] + delta);
+        }
+
+        long get(int event) {
+            return (long) COUNTS.getAcquire(counts, PAD + event);
+        }
+    }
+
+    /**
+     * @param names one per event; event {@code i} is {@code names[i]}
+     */
+    public EventCounters(String... names) {
+        this.names = names;
+    }
+
+    /**
+     * The cell of writer {@code i}, created on first use. Called by the
+     * thread that sets up writers, not by the writers themselves.
+     */
+    public synchronized Cell cell(int i) {
+        Cell[] c = cells;
+        if (i >= c.length) {
+            c = Arrays.copyOf(c, i + 1);
+            for (int j = cells.length; j <= i; j++) {
+                c[j] = new Cell(names.length);
+            }
+            cells = c; // publish once filled
+        }
+        return c[i];
+    }
+
+    public int events() {
+        return names.length;
+    }
+
+    public String name(int event) {
+        return names[event];
+    }
+
+    /** Sum of {@code event} over all cells; weakly consistent while writers run. */
+    public long sum(int event) {
+        long sum = 0;
+        for (Cell c : cells) {
+            sum += c.get(event);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,22 @@
+package dev.yin.lib;
+
+/**
+ * Primitive {@code int} variant of {@link Buffer}.
+ * <p>
+ * Instead of handing the unread items back as a {@code List}, the consumer
+ * drains them straight into a caller-supplied histogram, so no boxing and no
+ * per-flush collection is needed.
+ */
+public interface IntBuffer {
+    boolean write(int value);          // producer writes one item
+    int write(int[] values, int offset, int length); // producer writes a batch, returns how many were stored
+    int drainTo(long[] histogram);     // consumer counts all unread items into histogram[value]
+    int drainTo(int[] histogram);      // same as above, for int histograms
+    int drainTo(AdaptiveHistogram histogram); // same as above, for domains too large for an array
+
+    // Overflow statistics, see AdaptiveIntRingBuffer; zero for buffers without the policy
+    default long overwritten() { return 0; } // unread values lost to newer ones
+    default long spilled() { return 0; }     // values stored past capacity in spill segments
+    default long paused() { return 0; }      // writes that waited for space
+    default int capacity() { return 0; }     // current capacity in values, 0 if not bounded by one
+}
@@ -0,0 +1,163 @@
+package dev.yin.lib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A primitive {@code int[]}-backed Single-Producer Single-Consumer (SPSC) ring buffer.
+ * <p>
+ * Same design as {@link RingBuffer}, but values are stored unboxed and the
+ * consumer side never materializes a list: {@link #drainTo(long[])} counts
+ * every unread value directly into {@code histogram[value]}.
+ *
+ * <h3>Overflow Policy</h3>
+ * If the buffer is full, the newest value is silently dropped.
+ *
+ * <h3>Memory Ordering</h3>
+ * The write and read sequences are published with {@code setRelease} and
+ * observed with {@code getAcquire}, so a value is always visible to the
+ * consumer before the sequence that covers it. Each sequence sits on its own
+ * padded cache line, and the producer keeps a cached copy of the read
+ * sequence next to its own, re-reading the consumer's line only when the
+ * buffer looks full.
+ *
+ * <h3>Thread Safety</h3>
+ * Safe <b>only</b> for one thread calling {@link #write(int)} and one thread
+ * calling the {@code drainTo} methods.
+ */
+public class IntRingBuffer implements IntBuffer {
+
+    private static final int PAD = 8; // 8 longs = one 64-byte cache line
+    private static final int WRITE = PAD;           // producer line
+    private static final int CACHED_READ = PAD + 1; // producer line
+    private static final int READ = PAD * 2;        // consumer line
+
+    private static final VarHandle SEQ = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int[] buffer;
+    private final int mask;
+
+    // [pad][writeIndex, cachedReadIndex][pad][readIndex][pad]
+    private final long[] seq = new long[PAD * 4];
+
+    /**
+     * Creates a new ring buffer with at least the requested capacity.
+     * The actual capacity is rounded up to the next power of two.
+     *
+     * @param requestCapacity minimum desired capacity
+     */
+    public IntRingBuffer(int requestCapacity) {
+        int cap = 1;
+        while (cap < requestCapacity) {
+            cap <<= 1;
+        }
+        this.buffer = new int[cap];
+        this.mask = cap - 1;
+    }
+
+    /**
+     * Writes a value into the buffer.
+     * <p>
+     * If the buffer is full, the new value is dropped and not stored.
+     *
+     * @param value the value to write
+     * @return {@code false} if the value was dropped
+     */
+    @Override
+    public boolean write(int value) {
+        long wi = seq[WRITE]; // only this thread writes it
+
+        // Looks full against the cached read index → refresh it once
+        if (wi - seq[CACHED_READ] >= buffer.length) {
+            long ri = (long) SEQ.getAcquire(seq, READ);
+            seq[CACHED_READ] = ri;
+
+            // Buffer full → drop new data
+            if (wi - ri >= buffer.length) {
+                return false;
+            }
+        }
+
+        buffer[(int) (wi & mask)] = value;
+        SEQ.setRelease(seq, WRITE, wi + 1); // publish the value
+        return true;
+    }
+
+    /**
+     * Writes a batch of values with a single publication of the write index.
+     * <p>
+     * Stores as many values as fit; the rest of the batch is dropped.
+     *
+     * @return number of values stored
+     */
+    @Override
+    public int write(int[] values, int offset, int length) {
+        long wi = seq[WRITE];
+        long free = buffer.length - (wi - seq[CACHED_READ]);
+        if (free < length) {
+            long ri = (long) SEQ.getAcquire(seq, READ);
+            seq[CACHED_READ] = ri;
+            free = buffer.length - (wi - ri);
+        }
+
+        int n = (int) Math.min(length, free);
+        int start = (int) (wi & mask);
+        int first = Math.min(n, buffer.length - start); // up to the end of the array
+        System.arraycopy(values, offset, buffer, start, first);
+        System.arraycopy(values, offset + first, buffer, 0, n - first); // wrapped part
+
+        SEQ.setRelease(seq, WRITE, wi + n);
+        return n;
+    }
+
+    /**
+     * Counts all unread values into {@code histogram} and marks them as read.
+     *
+     * @param histogram counts indexed by value, must cover every written value
+     * @return number of values drained
+     */
+    @Override
+    public int drainTo(long[] histogram) {
+        long wi = (long) SEQ.getAcquire(seq, WRITE);
+        long ri = seq[READ]; // only this thread writes it
+
+        for (long i = ri; i < wi; i++) {
+            histogram[buffer[(int) (i & mask)]]++;
+        }
+
+        SEQ.setRelease(seq, READ, wi); // hand the slots back to the producer
+        return (int) (wi - ri);
+    }
+
+    /**
+     * Same as {@link #drainTo(long[])} for an {@code int} histogram.
+     */
+    @Override
+    public int drainTo(int[] histogram) {
+        long wi = (long) SEQ.getAcquire(seq, WRITE);
+        long ri = seq[READ];
+
+        for (long i = ri; i < wi; i++) {
+            histogram[buffer[(int) (i & mask)]]++;
+        }
+
+        SEQ.setRelease(seq, READ, wi);
+        return (int) (wi - ri);
+    }
+
+    /**
+     * Same as {@link #drainTo(long[])} for an {@link AdaptiveHistogram}.
+     */
+    @Override
+    public int drainTo(AdaptiveHistogram histogram) {
+        long wi = (long) SEQ.getAcquire(seq, WRITE);
+        long ri = seq[READ];
+
+        for (long i = ri; i < wi; i++) {
+            histogram.increment(buffer[(int) (i & mask)]);
+        }
+
+        SEQ.setRelease(seq, READ, wi);
+        return (int) (wi - ri);
+    }
+}
@@ -35,4 +35,25 @@ public class LogMessage {
         sb.append(msg);
         return sb.toString();
     }
+
+    /**
+     * Parses a line produced by {@link #toIpc()}.
+     */
+    public static LogMessage fromIpc(String line) {
+        String[] parts = line.split("\\|", 5);
+        Integer thread = parts[3].equals("-") ? null : Integer.valueOf(parts[3]);
+        return new LogMessage(Integer.parseInt(parts[2]), thread, parts.length > 4 ? parts[4] : "");
+    }
+
+    public int getProcess() {
+        return process;
+    }
+
+    public Integer getThread() {
+        return thread;
+    }
+
+    public String getMsg() {
+        return msg;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,10 @@
+package dev.yin.lib;
+
+/**
+ * Callbacks invoked by a {@link MessageReader} for each decoded message.
+ */
+public interface MessageHandler {
+    void onReady(ReadyMessage msg);
+    void onCount(CountMessage msg);
+    void onLog(LogMessage msg);
+}
@@ -0,0 +1,15 @@
+package dev.yin.lib;
+
+import java.io.IOException;
+
+/**
+ * Parent side of the IPC protocol, one instance per child stream.
+ */
+public interface MessageReader {
+    /**
+     * Blocks until the next message is decoded and dispatches it to {@code handler}.
+     *
+     * @return {@code false} once the stream is closed
+     */
+    boolean readNext(MessageHandler handler) throws IOException;
+}
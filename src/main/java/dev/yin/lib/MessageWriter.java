@@ -0,0 +1,13 @@
+package dev.yin.lib;
+
+/**
+ * Child → Parent side of the IPC protocol.
+ * <p>
+ * Implementations must be safe to call from several threads (generators,
+ * the count aggregator and the stdin listener all send messages).
+ */
+public interface MessageWriter {
+    void send(ReadyMessage msg);
+    void send(CountMessage msg);
+    void send(LogMessage msg);
+}
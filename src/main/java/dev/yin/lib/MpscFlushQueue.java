@@ -0,0 +1,89 @@
+package dev.yin.lib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free Multi-Producer Single-Consumer variant of {@link FlushQueue}.
+ * <p>
+ * Producers push onto a Treiber stack with a CAS on the head. The consumer
+ * takes the whole stack with one {@code getAndSet(null)}, reverses it in
+ * place to restore FIFO order, and walks it. No monitor is taken on either
+ * side and the consumer allocates nothing in {@link #drain(Consumer)}.
+ *
+ * <h3>Thread Safety</h3>
+ * Any number of threads may call {@link #offer(Object)}; only one thread
+ * may call {@link #drain(Consumer)} / {@link #flush()}.
+ *
+ * @param <T> the type of elements held in this queue
+ */
+public class MpscFlushQueue<T> {
+
+    private static class Node<E> {
+        final E value;
+        Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    private static final VarHandle HEAD;
+    static {
+        try {
+            HEAD = MethodHandles.lookup().findVarHandle(MpscFlushQueue.class, "head", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Newest node first; null when empty
+    @SuppressWarnings("unused") // accessed through HEAD
+    private volatile Node<T> head;
+
+    // Many producers
+    public void offer(T value) {
+        Node<T> node = new Node<>(value);
+        Node<T> h;
+        do {
+            h = head;
+            node.next = h;
+        } while (!HEAD.compareAndSet(this, h, node));
+    }
+
+    /**
+     * Single consumer: hands every queued item, oldest first, to {@code action}.
+     *
+     * @return number of items drained
+     */
+    public int drain(Consumer<? super T> action) {
+        @SuppressWarnings("unchecked")
+        Node<T> curr = (Node<T>) HEAD.getAndSet(this, null);
+
+        // Reverse the detached stack: newest-first → oldest-first
+        Node<T> prev = null;
+        while (curr != null) {
+            Node<T> next = curr.next;
+            curr.next = prev;
+            prev = curr;
+            curr = next;
+        }
+
+        int n = 0;
+        for (Node<T> node = prev; node != null; node = node.next) {
+            action.accept(node.value);
+            n++;
+        }
+        return n;
+    }
+
+    // Single consumer: flush all items at once
+    public List<T> flush() {
+        List<T> result = new ArrayList<>();
+        drain(result::add);
+        return result;
+    }
+}
@@ -0,0 +1,16 @@
+package dev.yin.lib;
+
+/**
+ * What an {@link AdaptiveIntRingBuffer} does with a value that finds it full.
+ */
+public enum OverflowPolicy {
+    DROP_NEWEST,      // the new value is dropped (same as IntRingBuffer)
+    OVERWRITE_OLDEST, // the oldest unread value is lost instead; writes never fail
+    SPILL,            // the value goes to a bounded chain of extra segments
+    BLOCK;            // the producer waits for space, up to a limit
+
+    /** {@code drop-newest}, {@code overwrite-oldest}, {@code spill} or {@code block}. */
+    public static OverflowPolicy fromString(String s) {
+        return OverflowPolicy.valueOf(s.trim().toUpperCase().replace('-', '_'));
+    }
+}
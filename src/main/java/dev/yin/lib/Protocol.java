@@ -0,0 +1,43 @@
+package dev.yin.lib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Wire format used for Child → Parent messages.
+ * <p>
+ * Commands (Parent → Child) are always text lines; they are sent once per
+ * tick per child and are not worth framing.
+ */
+public enum Protocol {
+    TEXT,
+    BINARY;
+
+    public static Protocol fromString(String s) {
+        return Protocol.valueOf(s.trim().toUpperCase());
+    }
+
+    public MessageWriter writer(OutputStream out) {
+        switch (this) {
+            case BINARY:
+                return new BinaryMessageWriter(new BufferedOutputStream(out));
+            default:
+                return new TextMessageWriter(out instanceof PrintStream ? (PrintStream) out : new PrintStream(out, true));
+        }
+    }
+
+    public MessageReader reader(InputStream in) {
+        switch (this) {
+            case BINARY:
+                return new BinaryMessageReader(new DataInputStream(new BufferedInputStream(in)));
+            default:
+                return new TextMessageReader(new BufferedReader(new InputStreamReader(in)));
+        }
+    }
+}
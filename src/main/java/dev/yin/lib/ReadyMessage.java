@@ -25,6 +25,13 @@ public class ReadyMessage {
         return "MESSAGE|READY|" + process;
     }
 
+    /**
+     * Parses a line produced by {@link #toIpc()}.
+     */
+    public static ReadyMessage fromIpc(String line) {
+        return new ReadyMessage(Integer.parseInt(line.substring("MESSAGE|READY|".length()).trim()));
+    }
+
     public int getProcess() {
         return process;
     }
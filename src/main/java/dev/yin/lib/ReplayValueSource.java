@@ -0,0 +1,115 @@
+package dev.yin.lib;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Streams pre-recorded values from a memory-mapped file.
+ * <p>
+ * The file is a flat array of big-endian 32-bit values, each in
+ * {@code [0, bound)}. Every generator starts at the beginning of the file and
+ * wraps around at the end, so after {@code k} full passes the totals are
+ * exactly {@code k} times the file's histogram.
+ * <p>
+ * The file is checked against the bound once when it is opened, so a file
+ * recorded with a larger bound (or a corrupt one) is rejected up front
+ * instead of failing later while its values are counted.
+ */
+public class ReplayValueSource implements ValueSource {
+    private final MappedByteBuffer values;
+    private final int size; // number of values
+    private int pos = 0;
+
+    // Files already checked, as "path|size|bound": every generator opens the same file
+    private static final Set<String> VALIDATED = new HashSet<>();
+
+    /**
+     * @throws IllegalArgumentException if the file is empty or holds a value outside {@code [0, bound)}
+     */
+    public ReplayValueSource(Path file, int bound) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.values = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.size = values.limit() / 4;
+        if (size == 0) {
+            throw new IllegalArgumentException("Replay file is empty: " + file);
+        }
+        validate(file, bound);
+    }
+
+    private void validate(Path file, int bound) {
+        String key = file.toAbsolutePath() + "|" + size + "|" + bound;
+        synchronized (VALIDATED) {
+            if (VALIDATED.contains(key)) {
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                int v = values.getInt(i << 2);
+                if (v < 0 || v >= bound) {
+                    throw new IllegalArgumentException("Replay file " + file + " has value " + v + " at index " + i
+                        + ", outside [0, " + bound + ")");
+                }
+            }
+            VALIDATED.add(key);
+        }
+    }
+
+    @Override
+    public int next() {
+        int v = values.getInt(pos << 2);
+        if (++pos == size) {
+            pos = 0;
+        }
+        return v;
+    }
+
+    @Override
+    public void fill(int[] dst, int offset, int length) {
+        while (length > 0) {
+            int n = Math.min(length, size - pos);
+            for (int i = 0; i < n; i++) {
+                dst[offset + i] = values.getInt((pos + i) << 2);
+            }
+            pos = (pos + n) % size;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Records a replay file and prints its histogram.
+     *
+     * Usage: ReplayValueSource FILE COUNT [SEED] [BOUND]
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args[0]);
+        long count = Long.parseLong(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0L;
+        int bound = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        ValueSource source = new XoroshiroValueSource(seed, bound);
+        long[] histogram = new long[bound];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            for (long i = 0; i < count; i++) {
+                int v = source.next();
+                histogram[v]++;
+                out.writeInt(v);
+            }
+        }
+        for (int v = 0; v < bound; v++) {
+            System.out.println(v + ": " + histogram[v]);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package dev.yin.lib;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * A high-performance, lock-free Single-Producer Single-Consumer (SPSC) ring buffer.
@@ -23,11 +26,17 @@ import java.util.List;
  * If the producer writes faster than the consumer flushes, and the buffer becomes full,
  * the newest value is silently dropped. Older unread values are preserved.
  *
+ * <h3>Memory Ordering</h3>
+ * Sequences are published with {@code setRelease} and observed with
+ * {@code getAcquire} and live on separate padded cache lines; the producer
+ * caches the read sequence and only re-reads it when the buffer looks full
+ * (see {@link IntRingBuffer}).
+ *
  * <h3>Thread Safety</h3>
  * This implementation is safe <b>only</b> for SPSC usage:
  * <ul>
  *     <li>One producer thread calling {@link #write(Object)}</li>
- *     <li>One consumer thread calling {@link #flush()}</li>
+ *     <li>One consumer thread calling {@link #flush()} or {@link #drain(Consumer)}</li>
  * </ul>
  * Using multiple producers or multiple consumers will result in undefined behavior.
  *
@@ -35,14 +44,18 @@ import java.util.List;
  */
 public class RingBuffer<T> implements Buffer<T> {
 
+    private static final int PAD = 8; // 8 longs = one 64-byte cache line
+    private static final int WRITE = PAD;           // producer line
+    private static final int CACHED_READ = PAD + 1; // producer line
+    private static final int READ = PAD * 2;        // consumer line
+
+    private static final VarHandle SEQ = MethodHandles.arrayElementVarHandle(long[].class);
+
     private final Object[] buffer;
     private final int mask;
 
-    // Single-producer index
-    private long writeIndex = 0;
-
-    // Single-consumer index
-    private long readIndex = 0;
+    // [pad][writeIndex, cachedReadIndex][pad][readIndex][pad]
+    private final long[] seq = new long[PAD * 4];
 
     /**
      * Creates a new ring buffer with at least the requested capacity.
@@ -68,16 +81,20 @@ public class RingBuffer<T> implements Buffer<T> {
      */
     @Override
     public boolean write(T value) {
-        long ri = this.readIndex;
-        long wi = this.writeIndex;
+        long wi = seq[WRITE]; // only this thread writes it
 
-        // Buffer full → drop new data
-        if (wi - ri >= buffer.length) {
-            return false;
+        if (wi - seq[CACHED_READ] >= buffer.length) {
+            long ri = (long) SEQ.getAcquire(seq, READ);
+            seq[CACHED_READ] = ri;
+
+            // Buffer full → drop new data
+            if (wi - ri >= buffer.length) {
+                return false;
+            }
         }
 
         buffer[(int) (wi & mask)] = value;
-        writeIndex = wi + 1;
+        SEQ.setRelease(seq, WRITE, wi + 1);
         return true;
     }
 
@@ -91,8 +108,8 @@ public class RingBuffer<T> implements Buffer<T> {
      */
     @Override
     public List<T> flush() {
-        long wi = this.writeIndex;
-        long ri = this.readIndex;
+        long wi = (long) SEQ.getAcquire(seq, WRITE);
+        long ri = seq[READ];
 
         long available = wi - ri;
         if (available <= 0) {
@@ -107,7 +124,29 @@ public class RingBuffer<T> implements Buffer<T> {
             result.add(value);
         }
 
-        readIndex = wi;
+        SEQ.setRelease(seq, READ, wi);
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Hands every unread value, oldest first, to {@code action} without
+     * building a list, and clears the slots so the values can be collected.
+     *
+     * @return number of values drained
+     */
+    public int drain(Consumer<? super T> action) {
+        long wi = (long) SEQ.getAcquire(seq, WRITE);
+        long ri = seq[READ];
+
+        for (long i = ri; i < wi; i++) {
+            int slot = (int) (i & mask);
+            @SuppressWarnings("unchecked")
+            T value = (T) buffer[slot];
+            buffer[slot] = null;
+            action.accept(value);
+        }
+
+        SEQ.setRelease(seq, READ, wi);
+        return (int) (wi - ri);
+    }
+}
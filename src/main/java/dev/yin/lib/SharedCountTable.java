@@ -0,0 +1,150 @@
+package dev.yin.lib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A table of per-process count slots in a memory-mapped file, shared
+ * between the parent and all children (typically under {@code /dev/shm}).
+ *
+ * Slot layout (one slot per process, cache-line aligned):
+ *   long seq        — seqlock: odd while the owner is writing
+ *   long publishes  — number of publishes so far
+ *   long c0..c(n-1) — cumulative counts since START
+ *
+ * Each slot has exactly one writer (its child). Readers retry until they see
+ * the same even {@code seq} before and after copying the counts, so they
+ * never observe a half-written histogram. Counts are cumulative, so a reader
+ * that misses a publish loses nothing: the next read contains it.
+ * <p>
+ * A writer that dies mid-publish leaves its {@code seq} odd for good, so
+ * reads give up after {@link #MAX_READ_WAIT_NS}; the slot must be
+ * {@link #reset} before a new process takes it over.
+ */
+public class SharedCountTable {
+    private static final int CACHE_LINE = 64;
+    private static final int SEQ = 0;
+    private static final int PUBLISHES = 8;
+    private static final int COUNTS = 16;
+    private static final long MAX_READ_WAIT_NS = 50_000_000;
+
+    private static final VarHandle LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer map;
+    private final int buckets;
+    private final int slotBytes;
+
+    private SharedCountTable(MappedByteBuffer map, int buckets) {
+        this.map = map;
+        this.buckets = buckets;
+        this.slotBytes = slotBytes(buckets);
+    }
+
+    /**
+     * Creates (or truncates) the backing file and maps it.
+     */
+    public static SharedCountTable create(Path file, int slots, int buckets) {
+        return map(file, slots, buckets, true);
+    }
+
+    /**
+     * Maps an existing file created by {@link #create}.
+     */
+    public static SharedCountTable open(Path file, int slots, int buckets) {
+        return map(file, slots, buckets, false);
+    }
+
+    private static SharedCountTable map(Path file, int slots, int buckets, boolean create) {
+        long size = (long) slots * slotBytes(buckets);
+        try (FileChannel ch = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.nativeOrder());
+            return new SharedCountTable(map, buckets);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int slotBytes(int buckets) {
+        int raw = COUNTS + 8 * buckets;
+        return (raw + CACHE_LINE - 1) / CACHE_LINE * CACHE_LINE;
+    }
+
+    /**
+     * Owner of {@code slot} only: publishes the cumulative {@code counts}.
+     */
+    public void publish(int slot, long[] counts) {
+        int base = slot * slotBytes;
+        long seq = (long) LONGS.get(map, base + SEQ);
+
+        LONGS.setOpaque(map, base + SEQ, seq + 1); // odd: write in progress
+        VarHandle.storeStoreFence();
+        for (int i = 0; i < buckets; i++) {
+            LONGS.setOpaque(map, base + COUNTS + 8 * i, counts[i]);
+        }
+        LONGS.setOpaque(map, base + PUBLISHES, (long) LONGS.get(map, base + PUBLISHES) + 1);
+        LONGS.setRelease(map, base + SEQ, seq + 2); // even: consistent again
+    }
+
+    /**
+     * Copies a consistent snapshot of {@code slot}'s cumulative counts into {@code dst}.
+     *
+     * @return number of publishes the snapshot reflects, or -1 if the slot
+     *         stayed mid-publish for too long (its writer may have died)
+     */
+    public long read(int slot, long[] dst) {
+        int base = slot * slotBytes;
+        long start = System.nanoTime();
+        for (int spins = 0; ; spins++) {
+            long before = (long) LONGS.getAcquire(map, base + SEQ);
+            if ((before & 1) != 0) {
+                if (spins >= 100 && System.nanoTime() - start > MAX_READ_WAIT_NS) {
+                    return -1;
+                }
+                backOff(spins);
+                continue;
+            }
+            for (int i = 0; i < buckets; i++) {
+                dst[i] = (long) LONGS.getOpaque(map, base + COUNTS + 8 * i);
+            }
+            long publishes = (long) LONGS.getOpaque(map, base + PUBLISHES);
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getOpaque(map, base + SEQ) == before) {
+                return publishes;
+            }
+        }
+    }
+
+    /**
+     * Clears {@code slot} for a new owner. Only while no process writes it,
+     * i.e. before the new owner is started and after the old one exited.
+     */
+    public void reset(int slot) {
+        int base = slot * slotBytes;
+        for (int i = 0; i < buckets; i++) {
+            LONGS.setOpaque(map, base + COUNTS + 8 * i, 0L);
+        }
+        LONGS.setOpaque(map, base + PUBLISHES, 0L);
+        LONGS.setRelease(map, base + SEQ, 0L);
+    }
+
+    // The writer may be descheduled mid-publish; stop burning its CPU after a while.
+    private static void backOff(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package dev.yin.lib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A striped, cache-line padded counter for the many-writers / rare-reader case
+ * (same idea as {@code LongAdder}).
+ * <p>
+ * Each thread adds into one of several cells chosen by its identity hash, so
+ * concurrent writers rarely touch the same cache line. {@link #sum()} adds
+ * all cells and is only weakly consistent while writers are active.
+ */
+public class StripedCounter {
+    private static final int PAD = 8; // 8 longs = one 64-byte cache line
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] cells;
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedCounter(int stripes) {
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        this.mask = n - 1;
+        // cell i lives at (i + 1) * PAD, with a full line before the first and after the last
+        this.cells = new long[(n + 2) * PAD];
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        CELLS.getAndAdd(cells, index(), delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += (long) CELLS.getVolatile(cells, (i + 1) * PAD);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i <= mask; i++) {
+            CELLS.setVolatile(cells, (i + 1) * PAD, 0L);
+        }
+    }
+
+    private int index() {
+        // Identity hash: stable per thread, and unlike getId() not deprecated (Java 19+)
+        int h = Thread.currentThread().hashCode() * 0x9E3779B9;
+        return ((h >>> 16) & mask) * PAD + PAD;
+    }
+}
@@ -0,0 +1,34 @@
+package dev.yin.lib;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Reads {@code MESSAGE|...} text lines. Unknown lines are skipped.
+ */
+public class TextMessageReader implements MessageReader {
+    private final BufferedReader in;
+
+    public TextMessageReader(BufferedReader in) {
+        this.in = in;
+    }
+
+    @Override
+    public boolean readNext(MessageHandler handler) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("MESSAGE|COUNT|")) {
+                handler.onCount(CountMessage.fromIpc(line));
+                return true;
+            } else if (line.startsWith("MESSAGE|READY|")) {
+                handler.onReady(ReadyMessage.fromIpc(line));
+                return true;
+            } else if (line.startsWith("MESSAGE|LOG|")) {
+                handler.onLog(LogMessage.fromIpc(line));
+                return true;
+            }
+            // do nothing for anything else
+        }
+        return false;
+    }
+}
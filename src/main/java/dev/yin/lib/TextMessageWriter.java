@@ -0,0 +1,29 @@
+package dev.yin.lib;
+
+import java.io.PrintStream;
+
+/**
+ * Writes every message as one {@code MESSAGE|...} text line.
+ */
+public class TextMessageWriter implements MessageWriter {
+    private final PrintStream out;
+
+    public TextMessageWriter(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void send(ReadyMessage msg) {
+        out.println(msg.toIpc());
+    }
+
+    @Override
+    public void send(CountMessage msg) {
+        out.println(msg.toIpc());
+    }
+
+    @Override
+    public void send(LogMessage msg) {
+        out.println(msg.toIpc());
+    }
+}
@@ -0,0 +1,92 @@
+package dev.yin.lib;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Creates every thread of the program, as platform or virtual threads.
+ * <p>
+ * Virtual threads need Java 21. They are looked up reflectively so the code
+ * still compiles with {@code release 17}; build with {@code -Pjava21} and
+ * run on a Java 21 JVM to use them.
+ */
+public final class Threads {
+    private static volatile ThreadFactory virtualFactory; // null → platform threads
+
+    private Threads() {
+    }
+
+    /**
+     * @param executor {@code platform} or {@code virtual}
+     */
+    public static void configure(String executor) {
+        switch (executor) {
+            case "platform":
+                virtualFactory = null;
+                return;
+            case "virtual":
+                virtualFactory = lookupVirtualFactory();
+                return;
+            default:
+                throw new IllegalArgumentException("Unknown executor: " + executor);
+        }
+    }
+
+    public static boolean isVirtual() {
+        return virtualFactory != null;
+    }
+
+    /**
+     * Starts a named thread. {@code daemon} only applies to platform threads;
+     * virtual threads are always daemon (see {@link #keepAlive()}).
+     */
+    public static Thread start(String name, boolean daemon, Runnable task) {
+        Thread t;
+        ThreadFactory vf = virtualFactory;
+        if (vf != null) {
+            t = vf.newThread(task);
+            t.setName(name);
+        } else {
+            t = new Thread(task, name);
+            t.setDaemon(daemon);
+        }
+        t.start();
+        return t;
+    }
+
+    /**
+     * Factory for executors, following the configured mode.
+     */
+    public static ThreadFactory factory(String name) {
+        ThreadFactory vf = virtualFactory;
+        return task -> {
+            Thread t = vf != null ? vf.newThread(task) : new Thread(task);
+            t.setName(name);
+            if (vf == null) t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Virtual threads never keep the JVM alive, so in virtual mode the
+     * calling (main) thread parks forever; the process ends with
+     * {@code System.exit} or a signal. Returns at once in platform mode.
+     */
+    public static void keepAlive() {
+        while (isVirtual()) {
+            LockSupport.park();
+        }
+    }
+
+    private static ThreadFactory lookupVirtualFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                .getMethod("factory")
+                .invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(
+                "--executor=virtual requires Java 21+, running on " + Runtime.version(), e);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package dev.yin.lib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only store of per-tick histograms in memory-mapped segment files.
+ *
+ * Segment {@code ticks-<first time ms>.seg}, pre-sized for {@code capacity} records:
+ *   header — int magic, int version, int domain, int capacity
+ *   index  — long time of record 0, 64, 128, ... (0 = not written yet)
+ *   record — long time ms, long c0..c(domain-1), long checksum
+ *
+ * Records are fixed-width, so record {@code i} is found without reading the
+ * ones before it, and the sparse index narrows a time lookup to at most
+ * {@link #INDEX_EVERY} records per segment. The checksum is written last: a
+ * record whose checksum does not match (torn write, or the zeroes of the
+ * pre-sized file) ends the segment. {@link #open} recovers the append
+ * position that way after a crash, and readers use it to ignore a record
+ * being written. Records reach the page cache immediately; segments are
+ * forced to disk when they are full and on {@link #close}.
+ * <p>
+ * Not thread-safe: one thread appends; {@link #query} can run anywhere,
+ * including in another process while the store is being written.
+ */
+public class TickStore implements AutoCloseable {
+    public static final int INDEX_EVERY = 64;
+
+    private static final int MAGIC = 0x54534547; // "TSEG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final String PREFIX = "ticks-";
+    private static final String SUFFIX = ".seg";
+
+    private final Path dir;
+    private final int domain;
+    private final int capacity;
+    private final long[] counts; // reused record buffer
+
+    private MappedByteBuffer segment;
+    private int count; // records in the current segment
+
+    private TickStore(Path dir, int domain, int capacity) {
+        this.dir = dir;
+        this.domain = domain;
+        this.capacity = capacity;
+        this.counts = new long[domain];
+    }
+
+    /**
+     * Opens (or creates) the store in {@code dir} for appending. The last
+     * segment is scanned from its last index entry to find the end of the
+     * last complete record.
+     *
+     * @param capacity records per new segment, lowered if a segment would not fit in one mapping
+     */
+    public static TickStore open(Path dir, int domain, int capacity) {
+        long recordBytes = recordBytes(domain);
+        int fit = (int) Math.min(capacity, (Integer.MAX_VALUE - HEADER_BYTES) / (recordBytes + 8));
+        if (fit < 1) {
+            throw new IllegalArgumentException("Domain " + domain + " is too large for a tick store record");
+        }
+        TickStore store = new TickStore(dir, domain, fit);
+        try {
+            Files.createDirectories(dir);
+            List<Path> segments = segments(dir);
+            if (!segments.isEmpty()) {
+                store.recover(segments.get(segments.size() - 1));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return store;
+    }
+
+    /**
+     * Appends one tick. Starts a new segment when the current one is full.
+     */
+    public void append(long timeMs, AdaptiveHistogram histogram) {
+        if (histogram.domain() != domain) {
+            throw new IllegalArgumentException("Histogram domain " + histogram.domain() + ", store domain " + domain);
+        }
+        if (segment == null || count == capacityOf(segment)) {
+            roll(timeMs);
+        }
+        histogram.copyTo(counts);
+
+        int pos = recordOffset(segment, count);
+        segment.putLong(pos, timeMs);
+        for (int i = 0; i < domain; i++) {
+            segment.putLong(pos + 8 + 8 * i, counts[i]);
+        }
+        segment.putLong(pos + 8 + 8 * domain, checksum(timeMs, counts));
+        if (count % INDEX_EVERY == 0) {
+            segment.putLong(HEADER_BYTES + 8 * (count / INDEX_EVERY), timeMs);
+        }
+        count++;
+    }
+
+    @Override
+    public void close() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Sums every stored tick with {@code fromMs <= time < toMs}. Only the
+     * segments overlapping the range are mapped, and within each one only
+     * the records from the closest index entry on are read.
+     */
+    public static Result query(Path dir, long fromMs, long toMs) {
+        Result result = null;
+        try {
+            List<Path> segments = segments(dir);
+            for (int s = 0; s < segments.size(); s++) {
+                long first = firstTime(segments.get(s));
+                long next = s + 1 < segments.size() ? firstTime(segments.get(s + 1)) : Long.MAX_VALUE;
+                if (first >= toMs || next <= fromMs) {
+                    continue; // segment entirely outside the range
+                }
+                MappedByteBuffer seg = map(segments.get(s), FileChannel.MapMode.READ_ONLY, 0);
+                if (seg.capacity() < HEADER_BYTES || seg.getInt(0) != MAGIC) {
+                    continue; // still being created
+                }
+                int domain = seg.getInt(8);
+                if (result == null) {
+                    result = new Result(domain);
+                }
+                scan(seg, domain, fromMs, toMs, result);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result == null ? new Result(0) : result;
+    }
+
+    /**
+     * Sum of a range of ticks, see {@link #query}.
+     */
+    public static final class Result {
+        public final long[] counts;
+        public int ticks;
+
+        Result(int domain) {
+            this.counts = new long[domain];
+        }
+    }
+
+    private static void scan(MappedByteBuffer seg, int domain, long fromMs, long toMs, Result result) {
+        int capacity = capacityOf(seg);
+        // Last indexed record at or before fromMs
+        int start = 0;
+        for (int k = 0; k * INDEX_EVERY < capacity; k++) {
+            long t = seg.getLong(HEADER_BYTES + 8 * k);
+            if (t == 0 || t > fromMs) {
+                break;
+            }
+            start = k * INDEX_EVERY;
+        }
+
+        long[] record = new long[domain];
+        for (int i = start; i < capacity; i++) {
+            int pos = recordOffset(seg, i);
+            long time = seg.getLong(pos);
+            if (time >= toMs) {
+                return;
+            }
+            for (int v = 0; v < domain; v++) {
+                record[v] = seg.getLong(pos + 8 + 8 * v);
+            }
+            if (seg.getLong(pos + 8 + 8 * domain) != checksum(time, record)) {
+                return; // end of the written records
+            }
+            if (time >= fromMs) {
+                for (int v = 0; v < domain; v++) {
+                    result.counts[v] += record[v];
+                }
+                result.ticks++;
+            }
+        }
+    }
+
+    private void recover(Path file) throws IOException {
+        MappedByteBuffer seg = map(file, FileChannel.MapMode.READ_WRITE, 0);
+        if (seg.capacity() < HEADER_BYTES || seg.getInt(0) == 0) {
+            Files.delete(file); // crashed while creating it; the next append rolls a new one
+            return;
+        }
+        if (seg.getInt(0) != MAGIC || seg.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a tick store segment: " + file);
+        }
+        if (seg.getInt(8) != domain) {
+            throw new IllegalStateException("Store " + dir + " has domain " + seg.getInt(8) + ", not " + domain);
+        }
+        int capacity = capacityOf(seg);
+
+        // Start from the last index entry pointing at a complete record
+        int k = (capacity - 1) / INDEX_EVERY;
+        while (k > 0 && (seg.getLong(HEADER_BYTES + 8 * k) == 0 || !complete(seg, k * INDEX_EVERY))) {
+            k--;
+        }
+        int n = k * INDEX_EVERY;
+        while (n < capacity && complete(seg, n)) {
+            n++;
+        }
+        // Forget index entries of records lost with the crash
+        for (int j = (n + INDEX_EVERY - 1) / INDEX_EVERY; j * INDEX_EVERY < capacity; j++) {
+            seg.putLong(HEADER_BYTES + 8 * j, 0);
+        }
+        this.segment = seg;
+        this.count = n;
+    }
+
+    private boolean complete(MappedByteBuffer seg, int i) {
+        int pos = recordOffset(seg, i);
+        long time = seg.getLong(pos);
+        for (int v = 0; v < domain; v++) {
+            counts[v] = seg.getLong(pos + 8 + 8 * v);
+        }
+        return seg.getLong(pos + 8 + 8 * domain) == checksum(time, counts);
+    }
+
+    private void roll(long firstTimeMs) {
+        if (segment != null) {
+            segment.force();
+        }
+        Path file = dir.resolve(String.format("%s%020d%s", PREFIX, firstTimeMs, SUFFIX));
+        long size = HEADER_BYTES + 8L * indexEntries(capacity) + (long) capacity * recordBytes(domain);
+        try {
+            segment = map(file, FileChannel.MapMode.READ_WRITE, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segment.putInt(4, VERSION);
+        segment.putInt(8, domain);
+        segment.putInt(12, capacity);
+        segment.putInt(0, MAGIC); // last: a segment without it is not one
+        count = 0;
+    }
+
+    private static MappedByteBuffer map(Path file, FileChannel.MapMode mode, long size) throws IOException {
+        boolean write = mode == FileChannel.MapMode.READ_WRITE;
+        try (FileChannel ch = write
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ)) {
+            return ch.map(mode, 0, size > 0 ? size : ch.size());
+        }
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            files.forEach(segments::add);
+        }
+        Collections.sort(segments); // zero-padded first time: name order is time order
+        return segments;
+    }
+
+    private static long firstTime(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static int capacityOf(MappedByteBuffer seg) {
+        return seg.getInt(12);
+    }
+
+    private static int indexEntries(int capacity) {
+        return (capacity + INDEX_EVERY - 1) / INDEX_EVERY;
+    }
+
+    private static int recordOffset(MappedByteBuffer seg, int i) {
+        int capacity = capacityOf(seg);
+        int domain = seg.getInt(8);
+        return HEADER_BYTES + 8 * indexEntries(capacity) + i * recordBytes(domain);
+    }
+
+    private static int recordBytes(int domain) {
+        return 8 + 8 * domain + 8;
+    }
+
+    private static long checksum(long timeMs, long[] counts) {
+        long h = 0x9E3779B97F4A7C15L ^ timeMs;
+        h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L;
+        for (long c : counts) {
+            h = (h ^ c) * 0x94D049BB133111EBL;
+            h ^= h >>> 29;
+        }
+        return h == 0 ? 1 : h; // never equal to the zeroes of an unwritten record
+    }
+
+    /**
+     * Usage: {@code TickStore DIR FROM TO} — sums the ticks stored in DIR
+     * with FROM <= time < TO (unix seconds, as in the parent's JSON).
+     */
+    public static void main(String[] args) {
+        Path dir = Paths.get(args[0]);
+        long from = Long.parseLong(args[1]);
+        long to = Long.parseLong(args[2]);
+        Result r = query(dir, from * 1000, to * 1000);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ \"from\": \"").append(from).append("\", \"to\": \"").append(to)
+          .append("\", \"ticks\": ").append(r.ticks).append(", \"counts\": {");
+        long total = 0;
+        boolean first = true;
+        for (int v = 0; v < r.counts.length; v++) {
+            if (r.counts[v] == 0) continue;
+            if (!first) sb.append(", ");
+            sb.append("\"").append(v).append("\": ").append(r.counts[v]);
+            total += r.counts[v];
+            first = false;
+        }
+        sb.append("}, \"total\": ").append(total).append(" }");
+        System.out.println(sb);
+    }
+}
@@ -0,0 +1,71 @@
+package dev.yin.lib;
+
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Produces the values a generator writes, all in {@code [0, bound)}.
+ * <p>
+ * A source is used by exactly one generator thread and need not be thread-safe.
+ */
+public interface ValueSource {
+    int next();
+
+    /**
+     * Fills {@code dst[offset .. offset+length)} with the next values.
+     */
+    default void fill(int[] dst, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            dst[i] = next();
+        }
+    }
+
+    /**
+     * Creates a source from its {@code --source} spec.
+     *
+     * random      — java.util.Random (atomic seed update per call)
+     * splittable  — java.util.SplittableRandom
+     * xoroshiro   — xoroshiro128++ (default for seeded runs)
+     * replay:PATH — values streamed from a memory-mapped file, see {@link ReplayValueSource}
+     *
+     * @param seed seed for the PRNGs; {@code null} for a non-reproducible run
+     */
+    static ValueSource create(String spec, int bound, Long seed) {
+        if (spec.startsWith("replay:")) {
+            return new ReplayValueSource(Paths.get(spec.substring("replay:".length())), bound);
+        }
+        switch (spec) {
+            case "random": {
+                Random random = seed == null ? new Random() : new Random(seed);
+                return () -> random.nextInt(bound);
+            }
+            case "splittable": {
+                SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+                return () -> random.nextInt(bound);
+            }
+            case "xoroshiro":
+                return new XoroshiroValueSource(seed == null ? System.nanoTime() : seed, bound);
+            default:
+                throw new IllegalArgumentException("Unknown value source: " + spec);
+        }
+    }
+
+    /**
+     * {@code spec}, or the default when it is {@code null}: {@code xoroshiro}
+     * for seeded runs, {@code random} otherwise.
+     */
+    static String defaultSpec(String spec, boolean seeded) {
+        return spec != null ? spec : seeded ? "xoroshiro" : "random";
+    }
+
+    /**
+     * Derives an independent seed per generator from one run seed (SplitMix64 finalizer).
+     */
+    static long seedFor(long seed, int processNo, int threadNo) {
+        long z = seed + 0x9E3779B97F4A7C15L * (((long) processNo << 32) + threadNo + 1);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,60 @@
+package dev.yin.lib;
+
+/**
+ * xoroshiro128++ PRNG with plain (non-atomic) state.
+ * <p>
+ * Values are reduced to {@code [0, bound)} with a multiply-shift instead of
+ * a modulo; the bias is below 2^-32 for small bounds.
+ */
+public class XoroshiroValueSource implements ValueSource {
+    private final int bound;
+    private long s0;
+    private long s1;
+
+    public XoroshiroValueSource(long seed, int bound) {
+        this.bound = bound;
+        // Expand the seed with SplitMix64, as recommended for xoroshiro
+        this.s0 = splitMix(seed);
+        this.s1 = splitMix(seed + 0x9E3779B97F4A7C15L);
+        if ((s0 | s1) == 0) {
+            s1 = 1;
+        }
+    }
+
+    @Override
+    public int next() {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    @Override
+    public void fill(int[] dst, int offset, int length) {
+        long a = s0;
+        long b = s1;
+        for (int i = offset; i < offset + length; i++) {
+            long r = Long.rotateLeft(a + b, 17) + a;
+            b ^= a;
+            a = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+            b = Long.rotateLeft(b, 28);
+            dst[i] = (int) (((r >>> 32) * bound) >>> 32);
+        }
+        s0 = a;
+        s1 = b;
+    }
+
+    private long nextLong() {
+        long a = s0;
+        long b = s1;
+        long r = Long.rotateLeft(a + b, 17) + a;
+        b ^= a;
+        s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+        s1 = Long.rotateLeft(b, 28);
+        return r;
+    }
+
+    private static long splitMix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,598 @@
+package dev.yin.process;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import dev.yin.lib.AtomicInteger;
+import dev.yin.lib.Command;
+import dev.yin.lib.CountMessage;
+import dev.yin.lib.LogMessage;
+import dev.yin.lib.MessageHandler;
+import dev.yin.lib.Protocol;
+import dev.yin.lib.ReadyMessage;
+import dev.yin.lib.Threads;
+
+/**
+ * The processes directly below one node of the process tree: spawns them,
+ * owns the {@link Transport} to them and waits for their READY messages.
+ * <p>
+ * Without {@code --fanout}, or with at most {@code fanout} leaves, every leaf
+ * is a direct child. Otherwise the leaves are split into {@code fanout}
+ * contiguous subtrees; a subtree of more than one leaf is served by a relay
+ * ({@link ChildProcess} started with {@code --subtree=S}) that merges its
+ * subtree's counts and forwards one message per tick, so every node talks
+ * to at most {@code fanout} processes.
+ * <p>
+ * Children are spawned by {@code --spawn-threads} threads in parallel.
+ * {@code --fast-start} and {@code --cds=PATH} add JVM flags that shorten
+ * the time from spawn to READY.
+ * <p>
+ * With {@code --spares=K}, K more leaves are started and kept idle once
+ * READY. Transport slots are therefore decoupled from child numbers: when
+ * the process in a slot exits, a warm spare is told the child's number
+ * ({@code COMMAND|ASSIGN|childNo|base}) and started right away, and a new
+ * spare is spawned into the dead slot off the critical path. Without a warm
+ * spare (or for a relay) the child is respawned cold into its slot and
+ * started when it is READY.
+ * <p>
+ * Children can be added and retired while running ({@link #resize}). Every
+ * tick is begun through {@link #beginTick}, which decides under one lock who
+ * is asked and returns how many replies to expect; a retiring child answers
+ * its last tick with everything it generated and exits, so totals stay
+ * exact while the group changes.
+ */
+class ChildGroup {
+    // A direct child; it keeps its number when its process is replaced
+    private static class Member {
+        final int childNo;
+        final int subtree;          // leaves below it
+        final int base;             // number of the first leaf below it
+        int slot;
+        boolean started = false;    // START sent to its current process
+        boolean ready = false;      // counted towards awaitReady, once per member
+        boolean retiring = false;   // RETIRE goes out with the next tick
+        long firstTick = 0;         // first tick it answers (push mode)
+        long lastTick = Long.MAX_VALUE;
+
+        Member(int childNo, int subtree, int base, int slot) {
+            this.childNo = childNo;
+            this.subtree = subtree;
+            this.base = base;
+            this.slot = slot;
+        }
+    }
+
+    private final int countIntervalMs;
+    private final int threadCount;
+    private final long threadGenerateIntervalNs;
+    private final Options options;
+    private final Transport transport;
+    private final String cdsPath;     // --cds when usable, else null
+    private final List<String> jvmFlags;
+    private final int initialMembers;
+    private final boolean resizable;
+
+    private final Object readyLock = new Object();
+    private final AtomicInteger readyMsgCount = new AtomicInteger(0);
+
+    // Guarded by slotLock
+    private final Object slotLock = new Object();
+    private final List<Member> members = new ArrayList<>(); // in child number order
+    private Process[] children;       // by transport slot
+    private long[] spawnNs;           // by transport slot
+    private Member[] slotOwner;       // by transport slot, null for a spare
+    private final ArrayDeque<Integer> warmSpares = new ArrayDeque<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private final Set<Integer> retiredSlots = new HashSet<>();
+    private String startLine;         // replayed to children that join late
+    private String scaleLine;         // same
+    private long epochMs = -1;        // push mode: start of window 1
+    private int nextChildNo;
+    private int nextBase;
+
+    private volatile boolean stopping = false;
+
+    private static final int DEFAULT_SPAWN_THREADS = 8;
+    private static final boolean DEBUG =
+        Boolean.parseBoolean(System.getProperty("debug.mode", "false"));
+
+    ChildGroup(int leaves, int firstLeaf, int countIntervalMs, int threadCount, long threadGenerateIntervalNs,
+               Options options, MessageHandler handler) {
+        this.countIntervalMs = countIntervalMs;
+        this.threadCount = threadCount;
+        this.threadGenerateIntervalNs = threadGenerateIntervalNs;
+        this.options = options;
+
+        String mode = options.get("transport", "stdio");
+        // shm gives every leaf its own slot in one table, there is nothing to relay
+        int fanout = mode.equals("shm") ? 0 : options.getInt("fanout", 0);
+        int[] subtrees = split(leaves, fanout);
+        int base = firstLeaf;
+        for (int i = 0; i < subtrees.length; i++) {
+            members.add(new Member(i, subtrees[i], base, i));
+            base += subtrees[i];
+        }
+        this.initialMembers = subtrees.length;
+        this.nextChildNo = subtrees.length;
+        this.nextBase = base;
+
+        // shm slots hold cumulative counts in a table of fixed size: no spares, no resizing
+        this.resizable = !mode.equals("shm");
+        int spares = resizable ? options.getInt("spares", 0) : 0;
+        int slots = subtrees.length + spares;
+        this.children = new Process[slots];
+        this.spawnNs = new long[slots];
+        this.slotOwner = new Member[slots];
+        for (Member m : members) {
+            slotOwner[m.slot] = m;
+        }
+        this.cdsPath = cdsPath(options);
+        this.jvmFlags = jvmFlags(options.getBoolean("fast-start"), cdsPath);
+        this.transport = createTransport(mode, slots, countReady(handler));
+    }
+
+    /**
+     * Leaves below each direct child: all ones when flat, otherwise
+     * {@code fanout} subtrees whose sizes differ by at most one.
+     */
+    static int[] split(int leaves, int fanout) {
+        int n = fanout > 1 && leaves > fanout ? fanout : leaves;
+        int[] sizes = new int[n];
+        for (int i = 0; i < n; i++) {
+            sizes[i] = leaves / n + (i < leaves % n ? 1 : 0);
+        }
+        return sizes;
+    }
+
+    Transport transport() {
+        return transport;
+    }
+
+    /**
+     * Spawns all children and spares, in parallel: fork/exec and the JVM's
+     * own start overlap instead of adding up. Returns once every process
+     * was started.
+     */
+    void startAll() {
+        readyMsgCount.set(0);
+        AtomicInteger next = new AtomicInteger(0);
+        Member[] owners;
+        synchronized (slotLock) {
+            owners = slotOwner.clone();
+        }
+        int threads = Math.min(owners.length, options.getInt("spawn-threads", DEFAULT_SPAWN_THREADS));
+        Thread[] spawners = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            spawners[t] = Threads.start("spawner-" + t, true, () -> {
+                int slot;
+                while ((slot = next.increment() - 1) < owners.length) {
+                    Member m = owners[slot];
+                    if (m != null) {
+                        startProcess(slot, m.subtree, m.base);
+                    } else {
+                        startProcess(slot, 1, slot); // its real base comes with ASSIGN
+                    }
+                }
+            });
+        }
+        for (Thread spawner : spawners) {
+            try {
+                spawner.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    void awaitReady() {
+        synchronized (readyLock) {
+            while (readyMsgCount.get() < initialMembers) {
+                try {
+                    readyLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends START ({@code COMMAND|START}, or {@code COMMAND|START|epochMs}
+     * in push mode) to every child.
+     */
+    void start(String line) {
+        synchronized (slotLock) {
+            startLine = line;
+            String[] parts = line.split("\\|");
+            epochMs = parts.length > 2 ? Long.parseLong(parts[2]) : -1;
+            for (Member m : members) {
+                transport.send(m.slot, line);
+                m.started = true;
+            }
+        }
+    }
+
+    /** Sends {@code line} to every started child; spares stay idle. */
+    void broadcast(String line) {
+        synchronized (slotLock) {
+            if (line.startsWith("COMMAND|" + Command.SCALE.name())) {
+                scaleLine = line;
+            }
+            for (Member m : members) {
+                if (m.started) {
+                    transport.send(m.slot, line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Begins {@code tick} and returns the number of replies to expect for it.
+     * <p>
+     * Pull mode: sends {@code COMMAND|COUNT|tick}, or {@code COMMAND|RETIRE|tick}
+     * to a retiring child. Push mode: nothing is sent for the tick itself;
+     * a retiring child gets {@code COMMAND|RETIRE|tick+1}, the window it ends with.
+     */
+    int beginTick(long tick, boolean push) {
+        synchronized (slotLock) {
+            int expected = 0;
+            Iterator<Member> it = members.iterator();
+            while (it.hasNext()) {
+                Member m = it.next();
+                if (!m.started || tick < m.firstTick) {
+                    continue;
+                }
+                if (m.retiring) {
+                    m.retiring = false;
+                    m.lastTick = push ? tick + 1 : tick;
+                    retiredSlots.add(m.slot);
+                    transport.send(m.slot, "COMMAND|" + Command.RETIRE.name() + "|" + m.lastTick);
+                } else if (!push) {
+                    transport.send(m.slot, "COMMAND|" + Command.COUNT.name() + "|" + tick);
+                }
+                expected++;
+                if (m.lastTick == tick) {
+                    it.remove();
+                }
+            }
+            return expected;
+        }
+    }
+
+    /**
+     * Relay side of RETIRE: every child answers {@code tick} as its last tick.
+     * Returns the number of replies to expect for it.
+     */
+    int retireAll(long tick, boolean push) {
+        synchronized (slotLock) {
+            int expected = 0;
+            for (Member m : members) {
+                if (m.started) {
+                    m.lastTick = tick;
+                    retiredSlots.add(m.slot);
+                    transport.send(m.slot, "COMMAND|" + Command.RETIRE.name() + "|" + tick);
+                    expected++;
+                }
+            }
+            if (!push) {
+                members.clear(); // no COUNT for them any more
+            }
+            return expected;
+        }
+    }
+
+    /**
+     * Grows or shrinks the group to {@code count} direct children. New children
+     * are leaves; a warm spare joins at once, otherwise one is spawned and
+     * joins when READY. The newest children are retired first.
+     */
+    void resize(int count) {
+        if (!resizable) {
+            System.err.println("Cannot add or retire children with --transport=shm");
+            return;
+        }
+        synchronized (slotLock) {
+            int current = 0;
+            for (Member m : members) {
+                if (!m.retiring && m.lastTick == Long.MAX_VALUE) {
+                    current++;
+                }
+            }
+            for (; current < count; current++) {
+                Integer spare = warmSpares.pollFirst();
+                int slot = spare != null ? spare : allocateSlot();
+                Member m = new Member(nextChildNo++, 1, nextBase++, slot);
+                members.add(m);
+                slotOwner[slot] = m;
+                if (spare != null) {
+                    join(m);
+                } else {
+                    respawn(slot, 1, m.base);
+                }
+            }
+            for (int i = members.size() - 1; i >= 0 && current > count; i--) {
+                Member m = members.get(i);
+                if (m.retiring || m.lastTick != Long.MAX_VALUE) {
+                    continue;
+                }
+                current--;
+                if (m.started) {
+                    m.retiring = true;
+                } else { // never asked for a tick: just stop it
+                    members.remove(i);
+                    retiredSlots.add(m.slot);
+                    transport.send(m.slot, "COMMAND|" + Command.STOP.name());
+                }
+            }
+        }
+    }
+
+    /** Sends {@code line} (normally STOP) to children and spares, and waits until all have exited. */
+    void stopAll(String line) throws InterruptedException {
+        stopping = true;
+        Process[] all;
+        synchronized (slotLock) {
+            for (int slot = 0; slot < children.length; slot++) {
+                transport.send(slot, line);
+            }
+            all = children.clone();
+        }
+        for (Process child : all) {
+            if (child != null) {
+                child.waitFor(); // blocks until child exits
+            }
+        }
+        transport.close();
+    }
+
+    /**
+     * Starts a process in transport {@code slot}; it is numbered {@code slot}
+     * until an ASSIGN tells it otherwise, so its READY binds the right slot.
+     */
+    private void startProcess(int slot, int subtree, int base) {
+        try {
+            Options childOptions = options.copy(); // children run with the same switches
+            childOptions.set("base", String.valueOf(base));
+            if (cdsPath == null) {
+                childOptions.remove("cds"); // so relays do not warn about it again
+            }
+            if (subtree > 1) {
+                childOptions.set("subtree", String.valueOf(subtree));
+            } else {
+                childOptions.remove("subtree"); // a leaf, even below a relay
+            }
+
+            List<String> command = new ArrayList<>();
+            command.add(javaBinary()); // same JVM as the parent (e.g. Java 21 for virtual threads)
+            command.addAll(jvmFlags);
+            if (dumpsArchive(subtree, base)) {
+                command.add("-XX:ArchiveClassesAtExit=" + cdsPath); // written when it exits
+            }
+            command.addAll(List.of(
+                "-cp", getCurrentClasspath(), // classpath
+                "dev.yin.process.ChildProcess",
+                String.valueOf(slot),
+                String.valueOf(countIntervalMs),
+                String.valueOf(this.threadCount),
+                String.valueOf(this.threadGenerateIntervalNs)
+            ));
+            command.addAll(childOptions.toArgs());
+            ProcessBuilder pb = new ProcessBuilder(command);
+            transport.prepare(slot, pb);
+
+            synchronized (slotLock) {
+                spawnNs[slot] = System.nanoTime();
+            }
+            Process child = pb.start();
+            synchronized (slotLock) {
+                children[slot] = child;
+            }
+            transport.attach(slot, child);
+            child.onExit().thenRun(() -> onExit(slot, child));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void onExit(int slot, Process process) {
+        if (stopping) {
+            return;
+        }
+        synchronized (slotLock) {
+            if (children[slot] != process) {
+                return; // already replaced
+            }
+            if (retiredSlots.remove(slot)) { // retired on purpose
+                slotOwner[slot] = null;
+                freeSlots.addLast(slot);
+                return;
+            }
+            Member m = slotOwner[slot];
+            if (m == null) { // a spare died: just replace it
+                warmSpares.remove(slot);
+                respawn(slot, 1, slot);
+                return;
+            }
+
+            m.started = false;
+            Integer spare = m.subtree == 1 ? warmSpares.pollFirst() : null;
+            if (spare == null) { // cold restart in the same slot, joins once READY
+                respawn(slot, m.subtree, m.base);
+                if (DEBUG) { System.out.println("Child " + m.childNo + " exited, restarting it cold"); }
+                return;
+            }
+
+            m.slot = spare;
+            slotOwner[spare] = m;
+            join(m);
+            slotOwner[slot] = null; // the dead slot hosts the next spare
+            respawn(slot, 1, slot);
+            if (DEBUG) { System.out.println("Child " + m.childNo + " exited, spare in slot " + spare + " took over"); }
+        }
+    }
+
+    /**
+     * Makes the READY process in {@code m.slot} child {@code m.childNo} and
+     * starts it. In push mode it reports from the window after the current
+     * one on, and is expected from that window on.
+     */
+    private void join(Member m) {
+        transport.send(m.slot, "COMMAND|" + Command.ASSIGN.name() + "|" + m.childNo + "|" + m.base);
+        if (scaleLine != null) {
+            transport.send(m.slot, scaleLine);
+        }
+        if (startLine == null) {
+            return; // the group itself has not started yet
+        }
+        if (epochMs >= 0) {
+            m.firstTick = Math.max(0, (System.currentTimeMillis() - epochMs) / countIntervalMs) + 2;
+            transport.send(m.slot, "COMMAND|" + Command.START.name() + "|" + epochMs + "|" + m.firstTick);
+        } else {
+            transport.send(m.slot, startLine);
+        }
+        m.started = true;
+    }
+
+    private int allocateSlot() {
+        Integer free = freeSlots.pollFirst();
+        if (free != null) {
+            return free;
+        }
+        int slot = children.length;
+        children = Arrays.copyOf(children, slot + 1);
+        spawnNs = Arrays.copyOf(spawnNs, slot + 1);
+        slotOwner = Arrays.copyOf(slotOwner, slot + 1);
+        return slot;
+    }
+
+    private void respawn(int slot, int subtree, int base) {
+        Threads.start("respawn-" + slot, true, () -> startProcess(slot, subtree, base));
+    }
+
+    /**
+     * stdio — pipes to each child, one reader thread per child (default)
+     * uds   — Unix domain socket per child, all read by one selector thread
+     * shm   — stdio for control, counts read from a shared memory-mapped table
+     */
+    private Transport createTransport(String mode, int slots, MessageHandler handler) {
+        Protocol protocol = Protocol.fromString(options.get("protocol", "text"));
+        switch (mode) {
+            case "stdio":
+                return new StdioTransport(slots, protocol, handler);
+            case "uds":
+                return new UnixSocketTransport(slots, handler);
+            case "shm":
+                return new SharedMemoryTransport(slots, options.getInt("domain", 10), protocol, handler);
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + mode);
+        }
+    }
+
+    private MessageHandler countReady(MessageHandler handler) {
+        return new MessageHandler() {
+            @Override
+            public void onReady(ReadyMessage msg) {
+                int slot = msg.getProcess();
+                handler.onReady(msg);
+                synchronized (slotLock) {
+                    if (DEBUG) {
+                        long ms = (System.nanoTime() - spawnNs[slot]) / 1_000_000;
+                        System.out.println("Child " + slot + " READY " + ms + " ms after spawn");
+                    }
+                    Member m = slotOwner[slot];
+                    if (m == null) { // a spare: idle until it takes over a child
+                        warmSpares.addLast(slot);
+                        return;
+                    }
+                    if (startLine != null) { // restarted or added while running
+                        join(m);
+                        return;
+                    }
+                    if (m.ready || m.childNo >= initialMembers) { // restarted before START, or not awaited
+                        return;
+                    }
+                    m.ready = true;
+                }
+                // Lock-free increment; only the last arrival takes the lock to wake the waiter.
+                // The waiter checks the condition under the same lock, so the wake-up is never lost.
+                if (readyMsgCount.increment() >= initialMembers) {
+                    synchronized (readyLock) { readyLock.notifyAll(); }
+                }
+            }
+
+            @Override
+            public void onCount(CountMessage msg) {
+                handler.onCount(msg);
+            }
+
+            @Override
+            public void onLog(LogMessage msg) {
+                handler.onLog(msg);
+            }
+        };
+    }
+
+    // The --cds archive path, or null if not given or not usable here
+    private static String cdsPath(Options options) {
+        if (!options.has("cds")) {
+            return null;
+        }
+        if (!getCurrentClasspath().endsWith(".jar")) {
+            // AppCDS only archives classes loaded from jar files
+            System.err.println("--cds ignored: children run from " + getCurrentClasspath() + ", not from a jar");
+            return null;
+        }
+        return options.get("cds", null);
+    }
+
+    /**
+     * --fast-start — C1 only, serial GC, small initial heap, CDS on
+     * --cds=PATH   — use the AppCDS archive at PATH; if it does not exist yet,
+     *                the first leaf records it when it exits (jar classpath only)
+     */
+    private static List<String> jvmFlags(boolean fastStart, String cdsPath) {
+        List<String> flags = new ArrayList<>();
+        if (fastStart) {
+            flags.addAll(List.of("-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-Xms16m", "-Xshare:auto"));
+        }
+        if (cdsPath != null) {
+            // CDS warnings go to stdout by default, where they would mix with the messages
+            flags.add("-Xlog:disable");
+            flags.add("-Xlog:all=warning:stderr");
+            if (Files.exists(Paths.get(cdsPath))) {
+                flags.add("-XX:SharedArchiveFile=" + cdsPath);
+            }
+        }
+        return flags;
+    }
+
+    private boolean dumpsArchive(int subtree, int base) {
+        return cdsPath != null && subtree == 1 && base == 0 && !Files.exists(Paths.get(cdsPath));
+    }
+
+    private static String javaBinary() {
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    private static String getCurrentClasspath() {
+        String classpath = ChildGroup.class
+            .getProtectionDomain()
+            .getCodeSource()
+            .getLocation()
+            .getPath();
+
+        // If running from target/classes, classpath ends with "/classes/"
+        // If running from a JAR, classpath ends with ".jar"
+        return classpath;
+    }
+}
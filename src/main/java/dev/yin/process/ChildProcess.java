@@ -2,82 +2,200 @@ package dev.yin.process;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import dev.yin.lib.LogMessage;
 import dev.yin.lib.ReadyMessage;
+import dev.yin.lib.AdaptiveIntRingBuffer;
 import dev.yin.lib.Command;
-import dev.yin.lib.CountMessage;
-import dev.yin.lib.RingBuffer;
+import dev.yin.lib.EpochHistogram;
+import dev.yin.lib.EventCounters;
+import dev.yin.lib.IntBuffer;
+import dev.yin.lib.IntRingBuffer;
+import dev.yin.lib.MessageWriter;
+import dev.yin.lib.OverflowPolicy;
+import dev.yin.lib.SharedCountTable;
+import dev.yin.lib.Threads;
+import dev.yin.lib.ValueSource;
 
 public class ChildProcess {
-    private final int processNo;
-    private final int threadCount;
-    private final int threadGenerateIntervalsMs;
-    private RingBuffer<Integer>[] buffers;
-    private final List<ScheduledExecutorService> generators = new ArrayList<>();
+    private int processNo; // changed by ASSIGN when a spare takes over
+    private int threadCount; // changed by SCALE
+    private final long threadGenerateIntervalNs;
+    private IntBuffer[] buffers;
+    private final InputStream commandIn;
+    private final MessageWriter out;
+    private final CountAggregator aggregator;
+    private final SharedCountTable sharedCounts;
+    private final int publishIntervalMs;
+    private final int countIntervalMs;
+    private volatile GeneratorEngine engine; // replaced by SCALE
+    private final String engineMode;
+    private final Options options;
+    private final double ratePerGenerator;
+    private final String bufferMode;
+    private final int bufferSize;
+    private final OverflowPolicy overflow;
+    private final int bufferMax;     // adaptive ring sizing up to this, 0 for a fixed size
+    private final int spillSegments;
+    private final int domain; // values are in [0, domain)
+    private final EventCounters events = new EventCounters(Generator.EVENTS);
+    private Generator[] generators = new Generator[0]; // created on START, reused across SCALE
+    private boolean started = false;
+    private final String valueSource;
+    private final Long seed;
+    private int leafNo; // position among all leaves, whatever the tree shape
+
+    // 64 MB of int per generator; beyond that use --buffer=histogram
+    private static final int MAX_BUFFER_SIZE = 1 << 24;
 
     public ChildProcess(int processNo, int parentCountIntervalMs, int threadCount, int threadGenerateIntervalsMs) {
+        this(processNo, parentCountIntervalMs, threadCount, threadGenerateIntervalsMs * 1_000_000L, new Options());
+    }
+
+    public ChildProcess(int processNo, int parentCountIntervalMs, int threadCount, long threadGenerateIntervalNs,
+                        Options options) {
         this.processNo = processNo;
         this.threadCount = threadCount;
-        this.threadGenerateIntervalsMs = threadGenerateIntervalsMs;
+        this.threadGenerateIntervalNs = threadGenerateIntervalNs;
+        this.countIntervalMs = parentCountIntervalMs;
 
-        @SuppressWarnings("unchecked")
-        RingBuffer<Integer>[] tmp = (RingBuffer<Integer>[]) new RingBuffer<?>[threadCount];
-        this.buffers = tmp;
+        this.options = options;
+        this.buffers = new IntBuffer[threadCount];
 
-        int bufferSize = computeBufferSize(parentCountIntervalMs, threadGenerateIntervalsMs);
+        this.domain = options.getInt("domain", 10);
+        this.bufferMode = options.get("buffer", "ring");
+        this.bufferSize = computeBufferSize(parentCountIntervalMs, threadGenerateIntervalNs);
+        this.overflow = OverflowPolicy.fromString(options.get("overflow", "drop-newest"));
+        this.bufferMax = Math.min(options.getInt("buffer-max", 0), MAX_BUFFER_SIZE);
+        this.spillSegments = options.getInt("spill-segments", 16);
         for (int i = 0; i < threadCount; i++) {
-            buffers[i] = new RingBuffer<>(bufferSize);
+            buffers[i] = createBuffer(bufferMode);
+        }
+        Uplink uplink = Uplink.open(options);
+        this.commandIn = uplink.commandIn;
+        this.out = uplink.out;
+        this.aggregator = new CountAggregator(processNo, buffers, out, domain, events,
+                                              options.get("overflow", "drop-newest"));
+        this.sharedCounts = options.get("transport", "stdio").equals("shm")
+            ? SharedCountTable.open(Paths.get(options.get("shm", null)), processNo + 1, domain) // map up to our own slot
+            : null;
+        this.publishIntervalMs = options.getInt("publish-ms", 10);
+        this.valueSource = ValueSource.defaultSpec(options.get("source", null), options.has("seed"));
+        this.seed = options.has("seed") ? Long.valueOf(options.get("seed", null)) : null;
+        this.leafNo = options.getInt("base", processNo);
+        // Per generator, so SCALE changes the load of the child
+        this.ratePerGenerator = options.has("rate") ? options.getRate("rate") / threadCount : 1e9 / threadGenerateIntervalNs;
+        this.engineMode = options.get("engine", options.has("rate") ? "rate" : "scheduled");
+        this.engine = createEngine(engineMode, options);
+    }
+
+    /**
+     * scheduled — one scheduled executor thread per generator
+     * wheel     — one timing-wheel thread per core drives all generators
+     * rate      — token-bucket pacing threads emitting in batches (default with --rate)
+     */
+    private GeneratorEngine createEngine(String mode, Options options) {
+        switch (mode) {
+            case "scheduled":
+                return new ScheduledGeneratorEngine(threadGenerateIntervalNs);
+            case "wheel":
+                return new TimingWheelGeneratorEngine(
+                    threadGenerateIntervalNs,
+                    options.getInt("engine-threads", Runtime.getRuntime().availableProcessors()));
+            case "rate":
+                return new RateGeneratorEngine(
+                    ratePerGenerator,
+                    options.getInt("engine-threads", Runtime.getRuntime().availableProcessors()));
+            default:
+                throw new IllegalArgumentException("Unknown generator engine: " + mode);
+        }
+    }
+
+    /**
+     * ring      — raw values are buffered and counted on COUNT (memory ~ rate × interval);
+     *             with --overflow or --buffer-max an {@link AdaptiveIntRingBuffer}
+     * histogram — values are counted by the generator itself (memory ~ buckets)
+     */
+    private IntBuffer createBuffer(String mode) {
+        switch (mode) {
+            case "ring":
+                if (overflow == OverflowPolicy.DROP_NEWEST && bufferMax == 0) {
+                    return new IntRingBuffer(bufferSize);
+                }
+                // Adaptive sizing starts from one interval's worth and grows as needed
+                int initial = bufferMax > 0 ? Math.max(1024, bufferSize / 4) : bufferSize;
+                return new AdaptiveIntRingBuffer(initial, overflow, Math.max(initial, bufferMax), spillSegments,
+                    () -> aggregator.requestDrain()); // a blocked generator gets an early drain
+            case "histogram":
+                return new EpochHistogram(domain);
+            default:
+                throw new IllegalArgumentException("Unknown buffer mode: " + mode);
         }
     }
 
     public void start() {
+        aggregator.start();
         startStdinListener();
     }
 
     private void startStdinListener() {
-        new Thread(() -> { // Create Runnable by lambda expression (anonymous function)
-            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        Threads.start("stdin-listener", false, () -> { // Create Runnable by lambda expression (anonymous function)
+            BufferedReader in = new BufferedReader(new InputStreamReader(commandIn));
             String event;
             try {
-                System.out.println(new ReadyMessage(processNo).toIpc()); // Greeting
+                out.send(new ReadyMessage(processNo)); // Greeting
                 while ((event = in.readLine()) != null) {
                     String[] parts = event.split("\\|");
                     if (parts[0].equals("COMMAND"))
-                        commandHandler(parts[1]);
+                        commandHandler(parts);
                 }
 
-                // stdin closed => parent died. Exit.
+                // stdin (or socket) closed => parent died. Exit.
                 shutdown();
                 return;
             } catch (IOException e) {
                 e.printStackTrace();
             }
-        }).start();
+        });
     }
 
-    private void commandHandler(String commandType) {
-        Command cmd = Command.fromString(commandType);
+    private void commandHandler(String[] parts) {
+        Command cmd = Command.fromString(parts[1]);
         switch (cmd) {
             case START:
-                for (int i = 0; i < threadCount; i++)
-                    startGeneratorThread(i, threadGenerateIntervalsMs, buffers[i]);
+                // The consumer first: a generator blocked on a full buffer asks it for early drains
+                if (sharedCounts != null)
+                    aggregator.startPublishing(sharedCounts, publishIntervalMs, countIntervalMs);
+                else if (parts.length > 2) // push mode: START carries the shared epoch (and the first window)
+                    aggregator.startPushing(Long.parseLong(parts[2]), countIntervalMs,
+                        parts.length > 3 ? Long.parseLong(parts[3]) : 0);
+                startGenerators();
+                return;
+
+            case SCALE:
+                scale(Integer.parseInt(parts[2]));
+                return;
+
+            case RETIRE: // answer this tick with everything generated, then exit
+                aggregator.retire(Long.parseLong(parts[2]), () -> engine.shutdown(), this::shutdown);
+                return;
+
+            case ASSIGN: // a warm spare takes over a dead child, before START
+                processNo = Integer.parseInt(parts[2]);
+                leafNo = Integer.parseInt(parts[3]);
+                aggregator.assign(processNo);
                 return;
 
             case COUNT:
-                for (int i = 0; i < threadCount; i++)
-                    startCounterThread(buffers[i]);
+                aggregator.requestCount(Long.parseLong(parts[2])); // one merged COUNT message per process and tick
                 return;
         
             case STOP:
-                System.out.println(new LogMessage(processNo, "Received STOP").toIpc());
+                out.send(new LogMessage(processNo, "Received STOP"));
                 shutdown();
                 return;
 
@@ -86,45 +204,59 @@ public class ChildProcess {
         }
     }
 
-    private void startGeneratorThread(int threadNo, int genIntervalMs, RingBuffer<Integer> buffer) {
-        /* 
-        Thread t = new Thread(new GeneratorThread(processNo, no, genIntervalMs, buffer));
-        t.start(); */
-        var exec = Executors.newSingleThreadScheduledExecutor();
-        generators.add(exec);
-
-        var random = new java.util.Random();
+    private void startGenerators() {
+        started = true;
+        engine.start(generators(threadCount));
+    }
 
-        exec.scheduleAtFixedRate(() -> {
-            int value = random.nextInt(10);
-            if (!buffer.write(value)) {
-                System.out.println(new LogMessage(processNo, threadNo, "Ring Buffer is full!").toIpc());
+    /**
+     * Runs {@code m} generators from now on. The engine is stopped and
+     * restarted with the first m generators; buffers of stopped generators
+     * stay registered with the aggregator, so what they produced is still
+     * counted and no value is lost.
+     */
+    private void scale(int m) {
+        if (m < 1 || m == threadCount) {
+            return;
+        }
+        if (m > buffers.length) {
+            int old = buffers.length;
+            buffers = Arrays.copyOf(buffers, m);
+            for (int i = old; i < m; i++) {
+                buffers[i] = createBuffer(bufferMode);
             }
-        }, 0, threadGenerateIntervalsMs, java.util.concurrent.TimeUnit.MILLISECONDS);
+            aggregator.setBuffers(buffers);
+        }
+        threadCount = m;
+        if (started) {
+            engine.shutdown(); // waits until no generator runs
+            GeneratorEngine next = createEngine(engineMode, options);
+            next.start(generators(m));
+            engine = next;
+        }
     }
 
-    private void startCounterThread(RingBuffer<Integer> buffer) {
-        new Thread(() -> {
-            List<Integer> numbers = buffer.flush();
-            Map<Integer, Integer> counter = new HashMap<>();
-
-            for (int v : numbers) {
-                counter.merge(v, 1, Integer::sum);
+    private Generator[] generators(int m) {
+        if (m > generators.length) {
+            int old = generators.length;
+            generators = Arrays.copyOf(generators, m);
+            for (int i = old; i < m; i++) {
+                ValueSource source = ValueSource.create(valueSource, domain,
+                    seed == null ? null : ValueSource.seedFor(seed, leafNo, i)); // reproducible per generator
+                generators[i] = new Generator(i, buffers[i], events.cell(i), source);
             }
-
-            CountMessage msg = new CountMessage(processNo, counter);
-            System.out.println(msg.toIpc());
-        }).start();
+        }
+        return Arrays.copyOf(generators, m);
     }
 
-    private static int computeBufferSize(int readIntervalMs, int generateIntervalMs) {
-        int itemsPerInterval = readIntervalMs / generateIntervalMs;
-        int safety = itemsPerInterval * 4; // 4x safety margin
-        return safety;
+    private static int computeBufferSize(int readIntervalMs, long generateIntervalNs) {
+        long itemsPerInterval = readIntervalMs * 1_000_000L / generateIntervalNs;
+        long safety = itemsPerInterval * 4; // 4x safety margin
+        return (int) Math.min(safety, MAX_BUFFER_SIZE);
     }
 
     private void shutdown() {
-        for (var exec : generators) { exec.shutdownNow(); }
+        engine.shutdown();
         System.exit(0);
     }
 
@@ -132,9 +264,19 @@ public class ChildProcess {
         int childId = Integer.parseInt(args[0]);
         int parentCountintervalMs = Integer.parseInt(args[1]);
         int threadCount = Integer.parseInt(args[2]);
-        int intervalMs = Integer.parseInt(args[3]);
+        long intervalNs = Long.parseLong(args[3]);
+        Options options = Options.parse(args, 4);
+        Threads.configure(options.get("executor", "platform"));
+
+        if (options.getInt("subtree", 1) > 1) { // relay role: merges a subtree of children
+            RelayProcess relay = new RelayProcess(childId, parentCountintervalMs, threadCount, intervalNs, options);
+            relay.start();
+            Threads.keepAlive();
+            return;
+        }
 
-        ChildProcess cp = new ChildProcess(childId, parentCountintervalMs, threadCount, intervalMs);
+        ChildProcess cp = new ChildProcess(childId, parentCountintervalMs, threadCount, intervalNs, options);
         cp.start();
+        Threads.keepAlive();
     }
 }
\ No newline at end of file
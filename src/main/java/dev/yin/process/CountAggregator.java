@@ -0,0 +1,331 @@
+package dev.yin.process;
+
+import java.util.ArrayDeque;
+
+import dev.yin.lib.AdaptiveHistogram;
+import dev.yin.lib.CountMessage;
+import dev.yin.lib.EventCounters;
+import dev.yin.lib.IntBuffer;
+import dev.yin.lib.LogMessage;
+import dev.yin.lib.MessageWriter;
+import dev.yin.lib.SharedCountTable;
+import dev.yin.lib.Threads;
+
+/**
+ * Child-side COUNT handler running on one long-lived thread.
+ * <p>
+ * Every {@link #requestCount(long)} wakes the thread, which drains all generator
+ * buffers into one {@link AdaptiveHistogram} and sends exactly one
+ * {@link CountMessage}, tagged with the requested tick, for the whole process.
+ * Requests that pile up are answered in order.
+ * <p>
+ * In push mode ({@link #startPushing}) no requests are needed: the process
+ * closes its window on every wall-clock boundary shared with the parent.
+ * <p>
+ * Generators only count their events (see {@link Generator}); after each
+ * tick this thread sends what changed as one {@code STATS} log line, so an
+ * overloaded child sends at most one log message per tick.
+ * <p>
+ * A producer blocked on a full buffer ({@code --overflow=block}) calls
+ * {@link #requestDrain()}: the thread that consumes the buffers in the
+ * current mode (the COUNT thread, the pusher or the publisher, never more
+ * than one) then empties them at once. In pull and push mode the values go
+ * into a carry histogram sent with the next tick; in shared-memory mode
+ * straight into the cumulative counts.
+ */
+class CountAggregator {
+    private volatile int processNo;
+    private volatile IntBuffer[] buffers; // grows with SCALE, never shrinks
+    private final MessageWriter out;
+    private final int domain;
+    private final EventCounters events;
+    private final String overflow;  // policy of the buffers, named in STATS lines
+    private final long[] reported;  // totals already sent in a STATS line: generator events, then BUFFER_EVENTS
+    private long reportedCapacity = 0;
+
+    private static final String[] BUFFER_EVENTS = { "overwritten", "spilled", "paused" };
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Long> pendingTicks = new ArrayDeque<>();
+    private boolean drainRequested = false; // guarded by lock
+    private final Object consumerLock = new Object(); // held while draining: one consumer at a time
+    private final AdaptiveHistogram carry;  // drained early, sent with the next tick; guarded by consumerLock
+    private boolean carried = false;        // guarded by consumerLock
+
+    // RETIRE: last tick to answer, what to do before draining it and after sending it
+    private volatile long retireTick = Long.MAX_VALUE;
+    private volatile Runnable stopGenerators;
+    private volatile Runnable exit;
+    private volatile boolean pushing = false;
+    private volatile boolean publishing = false;
+
+    CountAggregator(int processNo, IntBuffer[] buffers, MessageWriter out, int domain, EventCounters events,
+                    String overflow) {
+        this.processNo = processNo;
+        this.buffers = buffers;
+        this.out = out;
+        this.domain = domain;
+        this.events = events;
+        this.overflow = overflow;
+        this.reported = new long[events.events() + BUFFER_EVENTS.length];
+        this.carry = new AdaptiveHistogram(domain);
+    }
+
+    void assign(int processNo) {
+        this.processNo = processNo;
+    }
+
+    void setBuffers(IntBuffer[] buffers) {
+        this.buffers = buffers;
+    }
+
+    /**
+     * Makes {@code tick} the last one: before draining for it the generators
+     * are stopped, so the reply holds everything this process generated,
+     * and {@code exit} runs once it is sent. In pull mode the tick is
+     * requested right away; in push mode it is sent when its window closes.
+     */
+    void retire(long tick, Runnable stopGenerators, Runnable exit) {
+        this.stopGenerators = stopGenerators;
+        this.exit = exit;
+        this.retireTick = tick;
+        if (!pushing) {
+            requestCount(tick);
+        }
+    }
+
+    /**
+     * Any producer thread: drain the buffers now rather than at the next
+     * tick. Cheap to call repeatedly; the requests collapse into one drain.
+     */
+    void requestDrain() {
+        synchronized (lock) {
+            if (!drainRequested) {
+                drainRequested = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    void start() {
+        Threads.start("count-aggregator", true, this::run);
+    }
+
+    /**
+     * Shared-memory mode: instead of answering COUNT requests, drain the
+     * buffers every {@code periodMs} and publish the cumulative histogram
+     * into this process's slot of {@code table}. Event counts are reported
+     * every {@code statsMs}, as there are no ticks.
+     */
+    void startPublishing(SharedCountTable table, int periodMs, int statsMs) {
+        publishing = true;
+        Threads.start("count-publisher", true, () -> {
+            long[] cumulative = new long[domain]; // the table is dense
+            long next = System.currentTimeMillis();
+            long nextStats = next + statsMs;
+            Runnable drainEarly = () -> drainCumulative(cumulative);
+            while (true) {
+                next += periodMs;
+                try {
+                    sleepUntil(next, drainEarly);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                drainCumulative(cumulative);
+                table.publish(processNo, cumulative);
+                if (next >= nextStats) {
+                    reportEvents(-1);
+                    nextStats += statsMs;
+                }
+            }
+        });
+    }
+
+    /**
+     * Push mode: window {@code k} ends at {@code epochMs + k * intervalMs};
+     * on each boundary drain the buffers and send the histogram tagged with
+     * {@code k}. All processes share the epoch, so the parent can merge by
+     * window without a COUNT round trip.
+     */
+    void startPushing(long epochMs, int intervalMs, long firstTick) {
+        pushing = true;
+        Threads.start("count-pusher", true, () -> {
+            // A process that joins late starts with the window it is given, or the current one
+            long tick = firstTick > 0
+                ? firstTick - 1
+                : Math.max(0, (System.currentTimeMillis() - epochMs) / intervalMs);
+            while (true) {
+                tick++;
+                try {
+                    sleepUntil(epochMs + tick * intervalMs, this::drainToCarry);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                boolean last = tick >= retireTick;
+                if (last) {
+                    stopGenerators.run();
+                }
+                out.send(new CountMessage(processNo, tick, drain()));
+                reportEvents(tick);
+                if (last) {
+                    exit.run();
+                    return;
+                }
+            }
+        });
+    }
+
+    void requestCount(long tick) {
+        synchronized (lock) {
+            pendingTicks.addLast(tick);
+            lock.notifyAll();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long tick;
+            synchronized (lock) {
+                // Early drains belong to the pusher or publisher once one runs
+                while (pendingTicks.isEmpty() && !(drainRequested && !pushing && !publishing)) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pendingTicks.isEmpty()) {
+                    drainRequested = false;
+                    tick = -1;
+                } else {
+                    tick = pendingTicks.removeFirst();
+                }
+            }
+            if (tick < 0) {
+                drainToCarry();
+                continue;
+            }
+
+            boolean last = tick == retireTick;
+            if (last) {
+                stopGenerators.run();
+            }
+            out.send(new CountMessage(processNo, tick, drain()));
+            reportEvents(tick);
+            if (last) {
+                exit.run();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until wall-clock {@code timeMs}, running {@code drainEarly}
+     * whenever a producer asks for a drain meanwhile.
+     */
+    private void sleepUntil(long timeMs, Runnable drainEarly) throws InterruptedException {
+        while (true) {
+            synchronized (lock) {
+                long wait;
+                while (!drainRequested && (wait = timeMs - System.currentTimeMillis()) > 0) {
+                    lock.wait(wait);
+                }
+                if (!drainRequested) {
+                    return;
+                }
+                drainRequested = false;
+            }
+            drainEarly.run();
+        }
+    }
+
+    private void drainToCarry() {
+        synchronized (consumerLock) {
+            for (IntBuffer buffer : buffers) {
+                buffer.drainTo(carry);
+            }
+            carried = true;
+        }
+    }
+
+    // Fresh per message, so one busy tick does not leave all later ones dense
+    private AdaptiveHistogram drain() {
+        AdaptiveHistogram counts = new AdaptiveHistogram(domain);
+        synchronized (consumerLock) {
+            for (IntBuffer buffer : buffers) {
+                buffer.drainTo(counts);
+            }
+            if (carried) {
+                counts.addAll(carry);
+                carry.clear();
+                carried = false;
+            }
+        }
+        return counts;
+    }
+
+    // Shared-memory mode, also picking up anything carried before publishing started
+    private void drainCumulative(long[] cumulative) {
+        synchronized (consumerLock) {
+            for (IntBuffer buffer : buffers) {
+                buffer.drainTo(cumulative);
+            }
+            if (carried) {
+                carry.forEach((v, c) -> cumulative[v] += c);
+                carry.clear();
+                carried = false;
+            }
+        }
+    }
+
+    /**
+     * One {@code STATS tick=K policy=P dropped=N ...} line with the events
+     * that changed since the last one, plus the total capacity of adaptive
+     * buffers when it changed. Nothing is sent if nothing changed.
+     */
+    private void reportEvents(long tick) {
+        StringBuilder sb = null;
+        IntBuffer[] bs = buffers;
+        for (int e = 0; e < reported.length; e++) {
+            long total = e < events.events() ? events.sum(e) : bufferTotal(bs, e - events.events());
+            long delta = total - reported[e];
+            if (delta == 0) {
+                continue;
+            }
+            reported[e] = total;
+            sb = statsLine(sb, tick);
+            sb.append(' ').append(e < events.events() ? events.name(e) : BUFFER_EVENTS[e - events.events()])
+              .append('=').append(delta);
+        }
+        long capacity = 0;
+        for (IntBuffer b : bs) {
+            capacity += b.capacity();
+        }
+        if (capacity != reportedCapacity) { // fixed-size buffers report 0, so never
+            sb = statsLine(sb, tick).append(" capacity=").append(capacity);
+            reportedCapacity = capacity;
+        }
+        if (sb != null) {
+            out.send(new LogMessage(processNo, sb.toString()));
+        }
+    }
+
+    private StringBuilder statsLine(StringBuilder sb, long tick) {
+        if (sb != null) {
+            return sb;
+        }
+        sb = new StringBuilder("STATS");
+        if (tick >= 0) sb.append(" tick=").append(tick);
+        return sb.append(" policy=").append(overflow);
+    }
+
+    private static long bufferTotal(IntBuffer[] bs, int event) {
+        long total = 0;
+        for (IntBuffer b : bs) {
+            total += event == 0 ? b.overwritten() : event == 1 ? b.spilled() : b.paused();
+        }
+        return total;
+    }
+}
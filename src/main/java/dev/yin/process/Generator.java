@@ -0,0 +1,60 @@
+package dev.yin.process;
+
+import dev.yin.lib.EventCounters;
+import dev.yin.lib.IntBuffer;
+import dev.yin.lib.ValueSource;
+
+/**
+ * One logical generator: writes values from its own {@link ValueSource} into its own buffer.
+ * <p>
+ * A generator is always driven by exactly one thread at a time, which keeps
+ * its buffer single-producer, and its event counters single-writer. A full
+ * buffer is only counted here; the {@link CountAggregator} reports the
+ * totals once per tick.
+ */
+class Generator {
+    static final int MAX_BATCH = 256;
+
+    // Events counted per generator
+    static final int DROPPED = 0; // values lost to a full buffer
+    static final int FULL = 1;    // writes that found the buffer full
+    static final String[] EVENTS = { "dropped", "full" };
+
+    private final int threadNo;
+    private final IntBuffer buffer;
+    private final EventCounters.Cell events;
+    private final ValueSource source;
+    private final int[] batch = new int[MAX_BATCH];
+
+    Generator(int threadNo, IntBuffer buffer, EventCounters.Cell events, ValueSource source) {
+        this.threadNo = threadNo;
+        this.buffer = buffer;
+        this.events = events;
+        this.source = source;
+    }
+
+    void generate() {
+        int value = source.next();
+        if (!buffer.write(value)) {
+            events.add(DROPPED, 1);
+            events.add(FULL, 1);
+        }
+    }
+
+    /**
+     * Generates {@code n} (at most {@link #MAX_BATCH}) values and writes them
+     * with one buffer publication.
+     */
+    void generate(int n) {
+        source.fill(batch, 0, n);
+        int stored = buffer.write(batch, 0, n);
+        if (stored < n) {
+            events.add(DROPPED, n - stored);
+            events.add(FULL, 1);
+        }
+    }
+
+    int getThreadNo() {
+        return threadNo;
+    }
+}
@@ -0,0 +1,11 @@
+package dev.yin.process;
+
+/**
+ * Drives a child's generators at a fixed interval.
+ */
+interface GeneratorEngine {
+    void start(Generator[] generators);
+
+    /** Stops all generators; returns once none of them is running any more. */
+    void shutdown();
+}
@@ -0,0 +1,54 @@
+package dev.yin.process;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes events as JSON lines to a channel (standard output by default).
+ * Every event drained in one go is encoded into the same reused direct
+ * buffer and written with as few {@code write} calls as fit.
+ */
+class JsonSink extends OutputSink {
+    private final TickJson json;
+    private ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+    WritableByteChannel channel;
+    private boolean broken = false; // a write failed, e.g. the reader of the pipe is gone
+
+    JsonSink(String name, int capacity, TickJson json, WritableByteChannel channel) {
+        super(name, capacity);
+        this.json = json;
+        this.channel = channel;
+    }
+
+    @Override
+    void write(OutputEvent event) {
+        int need = json.maxBytes(event);
+        if (buf.remaining() < need) {
+            flush();
+            if (buf.capacity() < need) {
+                buf = ByteBuffer.allocateDirect(Integer.highestOneBit(need) << 1);
+            }
+        }
+        json.encode(event, dropped(), buf);
+    }
+
+    @Override
+    void flush() {
+        buf.flip();
+        try {
+            while (buf.hasRemaining() && !broken) {
+                channel.write(buf);
+            }
+        } catch (IOException e) {
+            broken = true;
+            e.printStackTrace();
+        }
+        buf.clear();
+    }
+
+    @Override
+    void release() {
+        flush();
+    }
+}
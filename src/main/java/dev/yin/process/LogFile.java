@@ -0,0 +1,97 @@
+package dev.yin.process;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.yin.lib.LogMessage;
+import dev.yin.lib.MpscFlushQueue;
+import dev.yin.lib.Threads;
+
+/**
+ * Children's LOG messages appended to a file ({@code --log-file}) by a
+ * writer thread. Reader threads only enqueue, so a slow disk never holds up
+ * COUNT replies read from the same pipe.
+ *
+ * Line: {@code <received ms> P<process> T<thread or -> <message>}
+ */
+class LogFile {
+    private static class Entry {
+        final long timeMs;
+        final LogMessage msg;
+
+        Entry(long timeMs, LogMessage msg) {
+            this.timeMs = timeMs;
+            this.msg = msg;
+        }
+    }
+
+    private final BufferedWriter writer;
+    private final MpscFlushQueue<Entry> queue = new MpscFlushQueue<>();
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    LogFile(Path path) {
+        try {
+            this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.thread = Threads.start("log-writer", true, this::run);
+    }
+
+    /** Any thread. */
+    void append(LogMessage msg) {
+        queue.offer(new Entry(System.currentTimeMillis(), msg));
+        LockSupport.unpark(thread);
+    }
+
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                boolean last = closed;
+                if (queue.drain(this::write) > 0) {
+                    writer.flush(); // one write per batch
+                }
+                if (last) {
+                    writer.close();
+                    return;
+                }
+                LockSupport.park(this);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void write(Entry e) {
+        try {
+            writer.write(Long.toString(e.timeMs));
+            writer.write(" P");
+            writer.write(Integer.toString(e.msg.getProcess()));
+            writer.write(" T");
+            writer.write(e.msg.getThread() == null ? "-" : e.msg.getThread().toString());
+            writer.write(' ');
+            writer.write(e.msg.getMsg());
+            writer.newLine();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package dev.yin.process;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional {@code --key=value} switches that follow the positional arguments.
+ * <p>
+ * The parent forwards every switch to its children unchanged via {@link #toArgs()},
+ * so both sides always run with the same settings.
+ */
+public class Options {
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    public static Options parse(String[] args, int from) {
+        Options options = new Options();
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.values.put(arg.substring(2), "true");
+            } else {
+                options.values.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    public String get(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String v = values.get(key);
+        return v == null ? defaultValue : Integer.parseInt(v);
+    }
+
+    public boolean has(String key) {
+        return values.containsKey(key);
+    }
+
+    /**
+     * Parses a rate such as {@code 5000000/s} or {@code 5000000} (per second).
+     */
+    public double getRate(String key) {
+        String v = values.get(key);
+        if (v.endsWith("/s")) {
+            v = v.substring(0, v.length() - 2);
+        }
+        return Double.parseDouble(v);
+    }
+
+    public boolean getBoolean(String key) {
+        return Boolean.parseBoolean(values.get(key));
+    }
+
+    public void set(String key, String value) {
+        values.put(key, value);
+    }
+
+    public void remove(String key) {
+        values.remove(key);
+    }
+
+    public Options copy() {
+        Options copy = new Options();
+        copy.values.putAll(values);
+        return copy;
+    }
+
+    public List<String> toArgs() {
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            args.add("--" + e.getKey() + "=" + e.getValue());
+        }
+        return args;
+    }
+}
@@ -0,0 +1,37 @@
+package dev.yin.process;
+
+import dev.yin.lib.AdaptiveHistogram;
+
+/**
+ * One line of parent output: an emitted tick, or a rolling window from
+ * {@link RollupEngine}. Shared by every {@link OutputSink}, so it is
+ * immutable and its {@code counts} are never modified after emission.
+ */
+final class OutputEvent {
+    final String window;     // null for a tick
+    final long timeMs;       // end of the tick
+    final AdaptiveHistogram counts;
+    final long latencyUs;
+    final int missing;
+    final boolean late;
+    final int ticks;         // ticks covered by a window
+
+    private OutputEvent(String window, long timeMs, AdaptiveHistogram counts, long latencyUs, int missing,
+                        boolean late, int ticks) {
+        this.window = window;
+        this.timeMs = timeMs;
+        this.counts = counts;
+        this.latencyUs = latencyUs;
+        this.missing = missing;
+        this.late = late;
+        this.ticks = ticks;
+    }
+
+    static OutputEvent tick(long timeMs, AdaptiveHistogram counts, long latencyUs, int missing, boolean late) {
+        return new OutputEvent(null, timeMs, counts, latencyUs, missing, late, 1);
+    }
+
+    static OutputEvent window(String name, long timeMs, int ticks, AdaptiveHistogram counts) {
+        return new OutputEvent(name, timeMs, counts, 0, 0, false, ticks);
+    }
+}
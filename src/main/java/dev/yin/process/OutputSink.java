@@ -0,0 +1,118 @@
+package dev.yin.process;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import dev.yin.lib.RingBuffer;
+import dev.yin.lib.Threads;
+
+/**
+ * Destination of the parent's output ({@code --sink=stdout,file:PATH,store:DIR}).
+ * <p>
+ * The thread emitting ticks only {@link #offer}s events into the sink's SPSC
+ * {@link RingBuffer} and unparks its writer thread, which encodes and writes
+ * them. A blocked pipe or a slow disk therefore only fills the ring: once it
+ * is full further events are dropped, counted, and reported by the sink (and
+ * on shutdown), never waited for.
+ * <p>
+ * One thread offers (the tick emitter); the writer thread is the consumer.
+ */
+abstract class OutputSink {
+    private final String name;
+    private final RingBuffer<OutputEvent> ring;
+    private final Consumer<OutputEvent> writeEach = this::write; // no method reference per drain
+    private Thread writer;
+    private volatile boolean closed = false;
+    private volatile long dropped = 0; // written by the offering thread only
+
+    OutputSink(String name, int capacity) {
+        this.name = name;
+        this.ring = new RingBuffer<>(capacity);
+    }
+
+    /**
+     * stdout     — JSON lines on standard output (default)
+     * file:PATH  — JSON lines in PATH, rolled over by size
+     * store:DIR  — binary {@link dev.yin.lib.TickStore} records, ticks only
+     */
+    static OutputSink create(String spec, Options options, int domain, boolean debug) {
+        int capacity = options.getInt("sink-buffer", 1024);
+        if (spec.equals("stdout")) {
+            return new JsonSink(spec, capacity, new TickJson(domain, debug),
+                new FileOutputStream(FileDescriptor.out).getChannel());
+        }
+        if (spec.startsWith("file:")) {
+            return new RollingFileSink(spec, capacity, new TickJson(domain, debug),
+                Paths.get(spec.substring("file:".length())),
+                options.getInt("sink-file-mb", 64) * 1024L * 1024L);
+        }
+        if (spec.startsWith("store:")) {
+            return new StoreSink(spec, capacity, Paths.get(spec.substring("store:".length())), domain,
+                options.getInt("store-segment", 3600));
+        }
+        throw new IllegalArgumentException("Unknown sink: " + spec);
+    }
+
+    void start() {
+        writer = Threads.start("sink-" + name, true, this::run);
+    }
+
+    /**
+     * Queues {@code event}, or drops it if the writer is too far behind.
+     */
+    void offer(OutputEvent event) {
+        if (!ring.write(event)) {
+            dropped++;
+            return;
+        }
+        LockSupport.unpark(writer);
+    }
+
+    String name() {
+        return name;
+    }
+
+    long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Writes what is queued and releases the sink. Gives up after
+     * {@code timeoutMs} if the writer is blocked, e.g. on a full pipe.
+     */
+    void close(long timeoutMs) {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Writer thread only. */
+    abstract void write(OutputEvent event);
+
+    /** Writer thread only, after each batch of {@link #write}s. */
+    abstract void flush();
+
+    /** Writer thread only, after the last {@link #write}. */
+    abstract void release();
+
+    private void run() {
+        while (true) {
+            boolean last = closed;
+            if (ring.drain(writeEach) > 0) {
+                flush();
+            }
+            if (last) {
+                release();
+                return;
+            }
+            LockSupport.park(this);
+        }
+    }
+}
@@ -3,37 +3,67 @@ package dev.yin.process;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.util.List;
-import java.util.function.BooleanSupplier;
+import java.nio.file.Paths;
 
+import dev.yin.lib.AdaptiveHistogram;
 import dev.yin.lib.Command;
-import dev.yin.lib.FlushQueue;
-import dev.yin.lib.AtomicInteger;
+import dev.yin.lib.CountMessage;
+import dev.yin.lib.LogMessage;
+import dev.yin.lib.MessageHandler;
+import dev.yin.lib.ReadyMessage;
+import dev.yin.lib.StripedCounter;
+import dev.yin.lib.Threads;
+import dev.yin.lib.ValueSource;
 
 public class ParentProcess {
     private final int countIntervalMs;
     private final int childProcessCount;
     private final int threadCount;
-    private final int threadGenerateIntervalsMs;
-    private Process[] children;
-    private PrintWriter[] childWriters;
-    private BufferedReader[] childReaders;
-    private final FlushQueue<String> countResultQueue = new FlushQueue<>();
-
-    private final Object readyLock = new Object();
-    private final AtomicInteger readyMsgCount = new AtomicInteger(0);
-    private final Object countLock = new Object();
-    private final AtomicInteger countMsgCount = new AtomicInteger(0);
+    private final long threadGenerateIntervalNs;
+    private final int domain; // values are in [0, domain)
+    private final Options options;
+    private ChildGroup children;
+    private Transport transport;
+    private TickAggregator ticks;
+    private final RollupEngine rollups; // null without --rollup
+    private OutputSink[] sinks;
+    private LogFile logFile; // null with --log-file=none
+    private final long deadlineMs;
+    private final boolean push;
+    private long tickBaseMs; // tick t covers up to tickBaseMs + t * countIntervalMs
+
+    private final StripedCounter logMsgCount = new StripedCounter();
     
     private static final boolean DEBUG =
         Boolean.parseBoolean(System.getProperty("debug.mode", "false"));
 
     public ParentProcess(int countIntervalMs, int childProcessCount, int threadCount, int threadGenerateIntervalsMs) {
+        this(countIntervalMs, childProcessCount, threadCount, threadGenerateIntervalsMs * 1_000_000L, new Options());
+    }
+
+    public ParentProcess(int countIntervalMs, int childProcessCount, int threadCount, long threadGenerateIntervalNs,
+                         Options options) {
         this.countIntervalMs = countIntervalMs;
         this.childProcessCount = childProcessCount;
         this.threadCount = threadCount;
-        this.threadGenerateIntervalsMs = threadGenerateIntervalsMs;
+        this.threadGenerateIntervalNs = threadGenerateIntervalNs;
+        this.options = options;
+        this.domain = options.getInt("domain", 10);
+        // Fail here rather than in every child, e.g. on a replay file with values outside the domain
+        ValueSource.create(ValueSource.defaultSpec(options.get("source", null), options.has("seed")), domain, null);
+        if (options.get("transport", "stdio").equals("uds")) {
+            options.set("protocol", "binary"); // the selector only decodes binary frames
+        }
+        this.deadlineMs = options.getInt("deadline-ms", countIntervalMs / 2);
+        // shm is read by the parent on its own schedule, nothing to push
+        this.push = options.get("report", "pull").equals("push") && !options.get("transport", "stdio").equals("shm");
+        this.rollups = options.has("rollup")
+            ? new RollupEngine(options.get("rollup", null), countIntervalMs, domain, (name, tick, ticks, counts) -> {
+                AdaptiveHistogram snapshot = new AdaptiveHistogram(domain); // the window keeps changing
+                snapshot.addAll(counts);
+                emit(OutputEvent.window(name, tickTimeMs(tick), ticks, snapshot));
+            })
+            : null;
     }
 
     public void start() {
@@ -41,9 +71,9 @@ public class ParentProcess {
         if (DEBUG) 
         {
             // In theory, expectedTotal numbers are generated every countIntervalMs
-            int expectedTotal = (childProcessCount * threadCount) // Total threads
-                                * countIntervalMs                 // Count period
-                                / threadGenerateIntervalsMs;      // Generate priod
+            long expectedTotal = ((long) childProcessCount * threadCount) // Total threads
+                                * countIntervalMs * 1_000_000L           // Count period
+                                / threadGenerateIntervalNs;              // Generate priod
             System.out.println( "expectedTotal of each counter JSON output string: " + expectedTotal);
         }
 
@@ -51,109 +81,130 @@ public class ParentProcess {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Parent received Ctrl+C, shutting down children ...");
             shutdownChildren();
+            closeSinks();
+            if (logFile != null) logFile.close();
         }));
 
-        readyMsgCount.set(0);
-        // spawn N child processes
-        children = new Process[childProcessCount];
-        childWriters = new PrintWriter[childProcessCount];
-        childReaders = new BufferedReader[childProcessCount];
-        for (int i = 0; i < childProcessCount; i++) {
-            startChild(i);
+        sinks = createSinks();
+        String logPath = options.get("log-file", "children.log");
+        if (!logPath.equals("none")) {
+            logFile = new LogFile(Paths.get(logPath));
         }
-        
-        waitUntil(readyLock, () -> readyMsgCount.get() >= childProcessCount);
-        broadcastCommand(Command.START);
-        startCountScheduler();
-    }
-
-    private void startChild(int childNo) {
-        try {
-            String cp = getCurrentClasspath();
-            ProcessBuilder pb = new ProcessBuilder(
-                "java",
-                "-cp", cp, // classpath
-                "dev.yin.process.ChildProcess",
-                String.valueOf(childNo),
-                String.valueOf(countIntervalMs),
-                String.valueOf(this.threadCount),
-                String.valueOf(this.threadGenerateIntervalsMs)
-            );
-
-            Process child = pb.start();
-            this.children[childNo] = child;
-            // Parent → Child (stdin)
-            childWriters[childNo] = new PrintWriter(child.getOutputStream(), true);
-
-            // Child (stdout) → Parent 
-            childReaders[childNo] = new BufferedReader(
-                new InputStreamReader(child.getInputStream())
-            );
-
-            // Start a thread to read child's stdout
-            startChildReaderThread(childNo);
+        ticks = new TickAggregator(domain, new TickAggregator.Listener() {
+            @Override
+            public void onTick(long tick, AdaptiveHistogram counts, int missing, long latencyUs) {
+                emit(OutputEvent.tick(tickTimeMs(tick), counts, latencyUs, missing, false));
+                if (rollups != null) rollups.add(tick, counts);
+            }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+            @Override
+            public void onLate(long tick, AdaptiveHistogram counts) {
+                emit(OutputEvent.tick(tickTimeMs(tick), counts, 0, 0, true));
+                if (rollups != null) rollups.addLate(counts);
+            }
+        });
+        ticks.start("tick-emitter");
+        // spawn N child processes, or up to --fanout relays serving them
+        children = new ChildGroup(childProcessCount, 0, countIntervalMs, threadCount, threadGenerateIntervalNs,
+                                  options, createHandler());
+        transport = children.transport();
+        long spawnStartNs = System.nanoTime();
+        children.startAll();
+        children.awaitReady();
+        if (DEBUG) {
+            System.out.println("All children READY " + (System.nanoTime() - spawnStartNs) / 1_000_000 + " ms after spawn");
+        }
+        if (push) {
+            // First window starts on the next wall-clock boundary
+            tickBaseMs = (System.currentTimeMillis() / countIntervalMs + 1) * countIntervalMs;
+            children.start("COMMAND|" + Command.START.name() + "|" + tickBaseMs);
+        } else {
+            tickBaseMs = System.currentTimeMillis();
+            children.start("COMMAND|" + Command.START.name());
         }
+        startCountScheduler();
+        startControlListener();
     }
 
     void broadcastCommand(Command cmd) {
-        for (int i = 0; i < this.childProcessCount; i++) {
-            childWriters[i].println("COMMAND|" + cmd.name());
-        }
+        children.broadcast("COMMAND|" + cmd.name());
     }
 
-    private void startChildReaderThread(int childNo) {
-        new Thread(() -> {
+    /**
+     * Commands typed on the parent's stdin:
+     *   COMMAND|SCALE|m    — every child runs m generator threads from now on
+     *   COMMAND|CHILDREN|n — add or retire children until n are running
+     */
+    private void startControlListener() {
+        Threads.start("control-listener", true, () -> {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            String line;
             try {
-                String line;
-                while ((line = childReaders[childNo].readLine()) != null) {
-                    if (line.startsWith("MESSAGE|COUNT|")) {
-                        countResultQueue.offer(line); // enqueue
-                        synchronized (countLock) { // Make "increment + notify" is atomicity
-                            countMsgCount.increment();
-                            countLock.notifyAll();
-                        }
-                    } else if (line.startsWith("MESSAGE|READY|")) {
-                        synchronized (readyLock) { // Make "increment + notify" is atomicity
-                            readyMsgCount.increment();
-                            readyLock.notifyAll();
+                while ((line = in.readLine()) != null) {
+                    String[] parts = line.trim().split("\\|");
+                    if (parts.length < 3 || !parts[0].equals("COMMAND")) {
+                        continue;
+                    }
+                    try {
+                        switch (Command.fromString(parts[1])) {
+                            case SCALE:
+                                children.broadcast("COMMAND|" + Command.SCALE.name() + "|" + Integer.parseInt(parts[2]));
+                                break;
+                            case CHILDREN:
+                                children.resize(Integer.parseInt(parts[2]));
+                                break;
+                            default:
+                                break;
                         }
-                    } else if (line.startsWith("MESSAGE|LOG|")) {
-                        // do nothing, can output to log file
-                        //System.out.println(line);
-                    } else {
-                        // do nothing
-                        //System.out.println(line);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Ignored command: " + line);
                     }
                 }
             } catch (IOException e) {
                 e.printStackTrace();
             }
-        }).start();
+        });
     }
 
-    private void shutdownChildren() {
-        try {
-            broadcastCommand(Command.STOP);
+    private MessageHandler createHandler() {
+        return new MessageHandler() {
+            @Override
+            public void onReady(ReadyMessage msg) {
+                // counted by the ChildGroup
+            }
+
+            @Override
+            public void onCount(CountMessage msg) {
+                ticks.add(msg); // lock-free enqueue, merged by the tick emitter
+            }
 
-            for (int i = 0; i < childProcessCount; i++) {
-                    children[i].waitFor();   // blocks until child exits
+            @Override
+            public void onLog(LogMessage msg) {
+                logMsgCount.increment();
+                if (logFile != null) logFile.append(msg);
             }
+        };
+    }
+
+    private void shutdownChildren() {
+        try {
+            children.stopAll("COMMAND|" + Command.STOP.name()); // blocks until children exit
 
             System.out.println("All children terminated.");
+            if (DEBUG) { System.out.println("LOG messages received: " + logMsgCount.sum()); }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     private void startCountScheduler() {
-        new Thread(() -> {
-            long countTimeStamp = System.currentTimeMillis();
+        Threads.start("count-scheduler", false, () -> {
+            long countTimeStamp = tickBaseMs;
+            long tick = 0;
 
             while (true) {
                 countTimeStamp += countIntervalMs;
+                tick++;
                 long sleep = countTimeStamp - System.currentTimeMillis();
 
                 try {
@@ -162,95 +213,60 @@ public class ParentProcess {
                     return;
                 }
 
-                countMsgCount.set(0);
-                // Ask children to send COUNT messages
-                broadcastCommand(Command.COUNT);
-                // Wait all COUNT messages arrived
-                waitUntil(countLock, () -> countMsgCount.get() >= childProcessCount);
-
-                // Flush all COUNT messages
-                List<String> msgs = countResultQueue.flush();
-
-                // Combine them
-                int[] combined = combineCounts(msgs);
-
-                // Output JSON
-                System.out.println(buildOutputJson(combined, countTimeStamp / 1000));
-            }
-        }).start();
-    }
-
-    private void waitUntil(Object lock, BooleanSupplier condition) {
-        synchronized (lock) {
-            while (!condition.getAsBoolean()) {
-                try {
-                    lock.wait();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
+                if (transport instanceof SharedMemoryTransport) {
+                    // Read the slots directly, no round trip
+                    long tickStartNs = System.nanoTime();
+                    AdaptiveHistogram combined = AdaptiveHistogram.of(((SharedMemoryTransport) transport).collect());
+                    long latencyUs = (System.nanoTime() - tickStartNs) / 1000;
+                    emit(OutputEvent.tick(countTimeStamp, combined, latencyUs, 0, false));
+                    if (rollups != null) rollups.add(tick, combined);
+                    continue;
                 }
+
+                // Never wait here: replies are merged and emitted by the tick emitter,
+                // so a slow child delays only its own tick, up to the deadline.
+                // In push mode children close the same window on their own clock
+                int expected = children.beginTick(tick, push); // one reply per direct child
+                ticks.open(tick, expected, deadlineMs);
             }
-        }
+        });
     }
 
-    private String getCurrentClasspath() {
-        String classpath = ParentProcess.class
-            .getProtectionDomain()
-            .getCodeSource()
-            .getLocation()
-            .getPath();
-
-        // If running from target/classes, classpath ends with "/classes/"
-        // If running from a JAR, classpath ends with ".jar"
-        return classpath;
+    private long tickTimeMs(long tick) {
+        return tickBaseMs + tick * countIntervalMs;
     }
 
-    private int[] parseCountResult(String msg) {
-        /**
-         * Format:
-         *     MESSAGE|COUNT|P|c0,c1,c2,c3,c4,c5,c6,c7,c8,c9|T
-         * Example:
-         *     MESSAGE|COUNT|1|9,4,7,20,12,4,19,9,10,8|102
-         */
-        String[] parts = msg.split("\\|");
-        String[] nums = parts[3].split(",");
-
-        int[] arr = new int[10];
-        for (int i = 0; i < 10; i++) {
-            arr[i] = Integer.parseInt(nums[i]);
+    /**
+     * stdout unless --sink is given; --store=DIR adds a store sink.
+     */
+    private OutputSink[] createSinks() {
+        String spec = options.get("sink", "stdout");
+        if (options.has("store")) {
+            spec += ",store:" + options.get("store", null);
+        }
+        String[] names = spec.split(",");
+        OutputSink[] created = new OutputSink[names.length];
+        for (int i = 0; i < names.length; i++) {
+            created[i] = OutputSink.create(names[i], options, domain, DEBUG);
+            created[i].start();
         }
-        return arr;
+        return created;
     }
 
-    private int[] combineCounts(List<String> countResults) {
-        int[] total = new int[10];
-
-        for (String countResult : countResults) {
-            int[] arr = parseCountResult(countResult);
-            for (int i = 0; i < 10; i++) {
-                total[i] += arr[i];
-            }
+    // Tick emitter only (the count scheduler with shm): the single producer of every sink
+    private void emit(OutputEvent event) {
+        for (OutputSink sink : sinks) {
+            sink.offer(event);
         }
-
-        return total;
     }
 
-    private String buildOutputJson(int[] counts, long unixSec) {
-        StringBuilder sb = new StringBuilder();
-        int total = 0; // For Test
-
-        sb.append("{ \"time\": \"").append(unixSec).append("\",\"counts\": {");
-
-        for (int i = 0; i < 10; i++) {
-            total += counts[i];
-            sb.append("\"").append(i).append("\": ").append(counts[i]);
-            if (i < 9) sb.append(", ");
+    private void closeSinks() {
+        if (sinks == null) return; // interrupted before they were created
+        for (OutputSink sink : sinks) {
+            sink.close(1000);
+            if (sink.dropped() > 0) {
+                System.out.println("Sink " + sink.name() + " dropped " + sink.dropped() + " events");
+            }
         }
-
-        sb.append("}");
-        // To check nums generated is expected or not
-        if (DEBUG) { sb.append(", \"total\": ").append(total); }
-        sb.append(" }");
-        return sb.toString();
     }
 }
@@ -0,0 +1,89 @@
+package dev.yin.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.yin.lib.Threads;
+
+/**
+ * Token-bucket generator engine for high, sub-millisecond rates.
+ * <p>
+ * Generators are pinned round-robin to a few pacing threads. Each thread
+ * computes how many values every generator owes since start
+ * ({@code elapsed × rate}) and pays them off in batches of up to
+ * {@link Generator#MAX_BATCH}, so the buffer publishes once per batch and the
+ * per-value cost is close to the cost of the RNG.
+ * <p>
+ * Between batches the thread waits until a useful batch has accumulated:
+ * it parks for long waits and spins for the last few microseconds, since
+ * {@code parkNanos} cannot wake up precisely enough at these rates.
+ */
+class RateGeneratorEngine implements GeneratorEngine {
+    private static final long SPIN_NS = 50_000; // spin instead of park below 50 µs
+    private static final long MAX_BATCH_WAIT_NS = 1_000_000; // never wait more than 1 ms to fill a batch
+
+    private final double ratePerGenerator; // values per second
+    private final int threadCount;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = true;
+
+    RateGeneratorEngine(double ratePerGenerator, int threadCount) {
+        this.ratePerGenerator = ratePerGenerator;
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public void start(Generator[] generators) {
+        int pacers = Math.min(threadCount, Math.max(1, generators.length));
+        for (int p = 0; p < pacers; p++) {
+            List<Generator> own = new ArrayList<>();
+            for (int i = p; i < generators.length; i += pacers) {
+                own.add(generators[i]);
+            }
+            Generator[] pinned = own.toArray(new Generator[0]);
+            threads.add(Threads.start("generator-rate-" + p, true, () -> runPacer(pinned)));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        for (Thread t : threads) { LockSupport.unpark(t); }
+        try {
+            for (Thread t : threads) { t.join(); }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runPacer(Generator[] generators) {
+        double nsPerValue = 1e9 / ratePerGenerator;
+        // Wait for a full batch when it fills quickly, otherwise for a single value
+        long batchTarget = (long) Math.max(1, Math.min(Generator.MAX_BATCH, MAX_BATCH_WAIT_NS / nsPerValue));
+        long start = System.nanoTime();
+        long emitted = 0; // per generator; all generators of a pacer advance together
+
+        while (running) {
+            long owed = (long) ((System.nanoTime() - start) / nsPerValue) - emitted;
+            while (owed > 0) {
+                int n = (int) Math.min(owed, Generator.MAX_BATCH);
+                for (Generator g : generators) {
+                    g.generate(n);
+                }
+                emitted += n;
+                owed -= n;
+            }
+
+            long wakeAt = start + (long) ((emitted + batchTarget) * nsPerValue);
+            long wait;
+            while ((wait = wakeAt - System.nanoTime()) > 0 && running) {
+                if (wait > SPIN_NS) {
+                    LockSupport.parkNanos(wait - SPIN_NS);
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+}
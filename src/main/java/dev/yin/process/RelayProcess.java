@@ -0,0 +1,188 @@
+package dev.yin.process;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import dev.yin.lib.AdaptiveHistogram;
+import dev.yin.lib.Command;
+import dev.yin.lib.CountMessage;
+import dev.yin.lib.LogMessage;
+import dev.yin.lib.MessageHandler;
+import dev.yin.lib.MessageWriter;
+import dev.yin.lib.ReadyMessage;
+import dev.yin.lib.Threads;
+
+/**
+ * Relay role of a {@link ChildProcess} ({@code --subtree=S}, S > 1): an inner
+ * node of the fan-in tree.
+ * <p>
+ * It spawns its own {@link ChildGroup} for the S leaves below it, reports
+ * READY once all of them are ready, and passes every command down. COUNT
+ * replies are merged per tick by a {@link TickAggregator}, so exactly one
+ * COUNT message per tick goes up, and the node above only talks to its
+ * direct children. Its deadline is half of the one it received, leaving the
+ * node above time to merge a partial tick.
+ * <p>
+ * On {@code COMMAND|RETIRE|tick} the whole subtree answers {@code tick} as
+ * its last tick; the relay exits once it has sent it.
+ */
+class RelayProcess {
+    private volatile int processNo; // changed by ASSIGN after a cold restart
+    private final int countIntervalMs;
+    private final InputStream commandIn;
+    private final MessageWriter out;
+    private final ChildGroup children;
+    private final TickAggregator ticks;
+    private final long deadlineMs;
+    private volatile boolean push = false;
+    private volatile long retireTick = Long.MAX_VALUE;
+
+    RelayProcess(int processNo, int countIntervalMs, int threadCount, long threadGenerateIntervalNs,
+                 Options options) {
+        this.processNo = processNo;
+        this.countIntervalMs = countIntervalMs;
+        Uplink uplink = Uplink.open(options);
+        this.commandIn = uplink.commandIn;
+        this.out = uplink.out;
+        this.deadlineMs = Math.max(1, options.getInt("deadline-ms", countIntervalMs / 2) / 2);
+
+        Options down = options.copy();
+        down.set("deadline-ms", String.valueOf(deadlineMs));
+        this.ticks = new TickAggregator(options.getInt("domain", 10), new TickAggregator.Listener() {
+            @Override
+            public void onTick(long tick, AdaptiveHistogram counts, int missing, long latencyUs) {
+                out.send(new CountMessage(RelayProcess.this.processNo, tick, counts));
+                if (missing > 0) {
+                    out.send(new LogMessage(RelayProcess.this.processNo, "Tick " + tick + " closed with " + missing + " missing"));
+                }
+                if (tick >= retireTick) {
+                    shutdown();
+                }
+            }
+
+            @Override
+            public void onLate(long tick, AdaptiveHistogram counts) {
+                out.send(new CountMessage(RelayProcess.this.processNo, tick, counts)); // late upstream as well
+            }
+        });
+        this.children = new ChildGroup(options.getInt("subtree", 1), options.getInt("base", processNo),
+                                       countIntervalMs, threadCount, threadGenerateIntervalNs, down, createHandler());
+    }
+
+    void start() {
+        ticks.start("tick-emitter");
+        children.startAll();
+        Threads.start("stdin-listener", false, () -> {
+            BufferedReader in = new BufferedReader(new InputStreamReader(commandIn));
+            String event;
+            try {
+                children.awaitReady();
+                out.send(new ReadyMessage(processNo)); // the whole subtree is ready
+                while ((event = in.readLine()) != null) {
+                    String[] parts = event.split("\\|");
+                    if (parts[0].equals("COMMAND"))
+                        commandHandler(event, parts);
+                }
+
+                // stdin (or socket) closed => parent died. Exit.
+                shutdown();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void commandHandler(String line, String[] parts) {
+        Command cmd = Command.fromString(parts[1]);
+        switch (cmd) {
+            case START:
+                if (parts.length > 2) { // push mode: open windows on the shared clock
+                    push = true;
+                    long epochMs = Long.parseLong(parts[2]);
+                    long firstTick = parts.length > 3
+                        ? Long.parseLong(parts[3]) // joined late: first window given by the parent
+                        : Math.max(0, (System.currentTimeMillis() - epochMs) / countIntervalMs) + 1;
+                    // The subtree starts with the same window, whatever its clocks say
+                    children.start("COMMAND|START|" + epochMs + "|" + firstTick);
+                    startWindowScheduler(epochMs, firstTick);
+                } else {
+                    children.start(line);
+                }
+                return;
+
+            case RETIRE: {
+                long tick = Long.parseLong(parts[2]);
+                retireTick = tick;
+                int expected = children.retireAll(tick, push);
+                if (!push) {
+                    ticks.open(tick, expected, deadlineMs);
+                } // else opened by the window scheduler
+                return;
+            }
+
+            case ASSIGN: // its subtree was spawned with the right leaves already
+                processNo = Integer.parseInt(parts[2]);
+                return;
+
+            case COUNT: {
+                long tick = Long.parseLong(parts[2]);
+                ticks.open(tick, children.beginTick(tick, false), deadlineMs);
+                return;
+            }
+
+            case STOP:
+                shutdown();
+                return;
+
+            default:
+                children.broadcast(line);
+                return;
+        }
+    }
+
+    private void startWindowScheduler(long epochMs, long firstTick) {
+        Threads.start("window-scheduler", true, () -> {
+            long tick = firstTick - 1;
+            while (true) {
+                tick++;
+                long sleep = epochMs + tick * countIntervalMs - System.currentTimeMillis();
+                try {
+                    if (sleep > 0) Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ticks.open(tick, children.beginTick(tick, true), deadlineMs);
+            }
+        });
+    }
+
+    private MessageHandler createHandler() {
+        return new MessageHandler() {
+            @Override
+            public void onReady(ReadyMessage msg) {
+                // counted by the ChildGroup
+            }
+
+            @Override
+            public void onCount(CountMessage msg) {
+                ticks.add(msg);
+            }
+
+            @Override
+            public void onLog(LogMessage msg) {
+                out.send(msg); // forwarded as is
+            }
+        };
+    }
+
+    private void shutdown() {
+        try {
+            children.stopAll("COMMAND|" + Command.STOP.name());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,57 @@
+package dev.yin.process;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * JSON lines appended to a file; once it reaches {@code maxBytes} it is
+ * renamed to {@code PATH.<time ms>} and a new file is started.
+ */
+class RollingFileSink extends JsonSink {
+    private final Path path;
+    private final long maxBytes;
+
+    RollingFileSink(String name, int capacity, TickJson json, Path path, long maxBytes) {
+        super(name, capacity, json, open(path));
+        this.path = path;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    void flush() {
+        super.flush();
+        try {
+            if (((FileChannel) channel).size() >= maxBytes) {
+                channel.close();
+                Files.move(path, Paths.get(path + "." + System.currentTimeMillis()), StandardCopyOption.REPLACE_EXISTING);
+                channel = open(path);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    void release() {
+        super.release();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static FileChannel open(Path path) {
+        try {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package dev.yin.process;
+
+import dev.yin.lib.AdaptiveHistogram;
+
+/**
+ * Rolling windows over the emitted ticks ({@code --rollup=1m,5m,1h}).
+ * <p>
+ * Each window is a ring of at most {@link #BUCKETS} buckets plus a running
+ * sum. Longer windows are downsampled: one bucket covers {@code width}
+ * ticks (1 tick for 1m, 5 for 5m, 60 for 1h at the default 1 s interval).
+ * A tick is added to the current bucket and to the sum; when a bucket is
+ * full the oldest one is subtracted from the sum and reused as the next
+ * current bucket. The cost of a tick therefore depends only on its number
+ * of non-zero buckets, never on the window length, and memory is
+ * {@code BUCKETS} histograms per window whatever the horizon.
+ * <p>
+ * A window covers between {@code (buckets - 1) * width + 1} and
+ * {@code buckets * width} ticks; the emitted {@code ticks} field says how
+ * many. Counts of a late reply ({@link #addLate}) go into the current
+ * bucket: a window's totals then include everything received, and the late
+ * data leaves the window together with the ticks it arrived with. Not
+ * thread-safe: all calls come from the thread emitting ticks.
+ */
+class RollupEngine {
+    static final int BUCKETS = 60;
+
+    interface Listener {
+        /** {@code counts} is the live running sum: copy it to keep it. */
+        void onWindow(String name, long tick, int ticks, AdaptiveHistogram counts);
+    }
+
+    private static class Window {
+        final String name;
+        final int width;                // ticks per bucket
+        final AdaptiveHistogram[] ring; // ring[head] is the current bucket
+        final AdaptiveHistogram sum;
+        int head = 0;
+        int filled = 1;      // buckets in use, the current one included
+        int inBucket = 0;    // ticks in the current bucket
+
+        Window(String name, int width, int buckets, int domain) {
+            this.name = name;
+            this.width = width;
+            this.ring = new AdaptiveHistogram[buckets];
+            for (int i = 0; i < buckets; i++) {
+                ring[i] = new AdaptiveHistogram(domain);
+            }
+            this.sum = new AdaptiveHistogram(domain);
+        }
+
+        int ticks() {
+            return (filled - 1) * width + inBucket;
+        }
+    }
+
+    private final Window[] windows;
+    private final Listener listener;
+
+    /**
+     * @param spec comma-separated window lengths such as {@code 1m,5m,1h} ({@code s}, {@code m}, {@code h})
+     */
+    RollupEngine(String spec, int intervalMs, int domain, Listener listener) {
+        String[] names = spec.split(",");
+        this.windows = new Window[names.length];
+        for (int i = 0; i < names.length; i++) {
+            long ticks = Math.max(1, parseMs(names[i]) / intervalMs);
+            int width = (int) ((ticks + BUCKETS - 1) / BUCKETS);
+            int buckets = (int) ((ticks + width - 1) / width);
+            windows[i] = new Window(names[i], width, buckets, domain);
+        }
+        this.listener = listener;
+    }
+
+    /**
+     * Adds one emitted tick to every window, and reports each window whose
+     * current bucket it completed.
+     */
+    void add(long tick, AdaptiveHistogram counts) {
+        for (Window w : windows) {
+            w.ring[w.head].addAll(counts);
+            w.sum.addAll(counts);
+            if (++w.inBucket < w.width) {
+                continue;
+            }
+
+            listener.onWindow(w.name, tick, w.ticks(), w.sum);
+            // Start the next bucket, evicting the oldest once the ring is full
+            w.head = (w.head + 1) % w.ring.length;
+            if (w.filled == w.ring.length) {
+                subtract(w.sum, w.ring[w.head]);
+                w.ring[w.head].clear();
+            } else {
+                w.filled++;
+            }
+            w.inBucket = 0;
+        }
+    }
+
+    /**
+     * Adds counts that arrived after their tick was emitted to every window's
+     * current bucket. Nothing is reported until the window next advances.
+     */
+    void addLate(AdaptiveHistogram counts) {
+        for (Window w : windows) {
+            w.ring[w.head].addAll(counts);
+            w.sum.addAll(counts);
+        }
+    }
+
+    private static void subtract(AdaptiveHistogram sum, AdaptiveHistogram bucket) {
+        bucket.forEach((v, c) -> sum.add(v, -c));
+    }
+
+    private static long parseMs(String window) {
+        long n = Long.parseLong(window.substring(0, window.length() - 1));
+        switch (window.charAt(window.length() - 1)) {
+            case 's':
+                return n * 1000;
+            case 'm':
+                return n * 60_000;
+            case 'h':
+                return n * 3_600_000;
+            default:
+                throw new IllegalArgumentException("Unknown rollup window: " + window);
+        }
+    }
+}
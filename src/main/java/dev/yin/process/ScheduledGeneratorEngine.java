@@ -0,0 +1,40 @@
+package dev.yin.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import dev.yin.lib.Threads;
+
+/**
+ * One single-thread scheduled executor per generator (M threads per child).
+ */
+class ScheduledGeneratorEngine implements GeneratorEngine {
+    private final long intervalNs;
+    private final List<ScheduledExecutorService> executors = new ArrayList<>();
+
+    ScheduledGeneratorEngine(long intervalNs) {
+        this.intervalNs = intervalNs;
+    }
+
+    @Override
+    public void start(Generator[] generators) {
+        for (Generator g : generators) {
+            var exec = Executors.newSingleThreadScheduledExecutor(Threads.factory("generator-" + g.getThreadNo()));
+            executors.add(exec);
+            exec.scheduleAtFixedRate(g::generate, 0, intervalNs, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (var exec : executors) { exec.shutdownNow(); }
+        try {
+            for (var exec : executors) { exec.awaitTermination(1, TimeUnit.SECONDS); }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
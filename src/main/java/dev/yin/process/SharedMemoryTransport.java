@@ -0,0 +1,94 @@
+package dev.yin.process;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import dev.yin.lib.MessageHandler;
+import dev.yin.lib.Protocol;
+import dev.yin.lib.SharedCountTable;
+
+/**
+ * stdio for control ({@code START}/{@code STOP}/{@code READY}) plus a
+ * {@link SharedCountTable} for the counts.
+ * <p>
+ * Children publish cumulative histograms into their own slot on a short
+ * period; on each tick the parent reads every slot and sums the difference
+ * to the previous read. No {@code COUNT} command or reply crosses a pipe.
+ * <p>
+ * When a child is restarted into its slot, what the old process published
+ * since the last read is carried into the next tick and the slot is cleared,
+ * so the new process counts from zero without the deltas going negative.
+ */
+class SharedMemoryTransport extends StdioTransport {
+    private final int childProcessCount;
+    private final Path file;
+    private final SharedCountTable table;
+    private final long[][] lastRead;
+    private final long[] snapshot;
+    private final long[] carried; // published by exited processes, not collected yet
+
+    SharedMemoryTransport(int childProcessCount, int domain, Protocol protocol, MessageHandler handler) {
+        super(childProcessCount, protocol, handler);
+        this.childProcessCount = childProcessCount;
+        Path dir = Files.isDirectory(Paths.get("/dev/shm"))
+            ? Paths.get("/dev/shm")
+            : Paths.get(System.getProperty("java.io.tmpdir"));
+        this.file = dir.resolve("multi-process-test-" + ProcessHandle.current().pid() + ".counts");
+        this.table = SharedCountTable.create(file, childProcessCount, domain);
+        this.lastRead = new long[childProcessCount][domain];
+        this.snapshot = new long[domain];
+        this.carried = new long[domain];
+    }
+
+    @Override
+    public void prepare(int childNo, ProcessBuilder pb) {
+        super.prepare(childNo, pb);
+        pb.command().add("--shm=" + file);
+        release(childNo); // a new process takes over the slot
+    }
+
+    // The slot's previous process, if any, has exited
+    private synchronized void release(int p) {
+        long[] last = lastRead[p];
+        if (table.read(p, snapshot) >= 0) { // not torn by dying mid-publish
+            for (int i = 0; i < carried.length; i++) {
+                carried[i] += snapshot[i] - last[i];
+            }
+        }
+        table.reset(p);
+        Arrays.fill(last, 0);
+    }
+
+    /**
+     * Sums what every child published since the previous call.
+     * Called from the count scheduler thread only.
+     */
+    synchronized long[] collect() {
+        long[] total = carried.clone();
+        Arrays.fill(carried, 0);
+        for (int p = 0; p < childProcessCount; p++) {
+            if (table.read(p, snapshot) < 0) {
+                continue; // mid-publish for too long: read again next tick, counts are cumulative
+            }
+            long[] last = lastRead[p];
+            for (int i = 0; i < total.length; i++) {
+                total[i] += snapshot[i] - last[i];
+                last[i] = snapshot[i];
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package dev.yin.process;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import dev.yin.lib.MessageHandler;
+import dev.yin.lib.MessageReader;
+import dev.yin.lib.Protocol;
+import dev.yin.lib.Threads;
+
+/**
+ * Commands go to each child's stdin, messages come back on its stdout,
+ * read by one blocking reader thread per child.
+ */
+class StdioTransport implements Transport {
+    private final Protocol protocol;
+    private final MessageHandler handler;
+    private volatile PrintWriter[] childWriters; // grows when children are added
+
+    StdioTransport(int childProcessCount, Protocol protocol, MessageHandler handler) {
+        this.protocol = protocol;
+        this.handler = handler;
+        this.childWriters = new PrintWriter[childProcessCount];
+    }
+
+    @Override
+    public void prepare(int childNo, ProcessBuilder pb) {
+        // stdio pipes are the ProcessBuilder default
+    }
+
+    @Override
+    public void attach(int childNo, Process child) {
+        // Parent → Child (stdin)
+        synchronized (this) {
+            PrintWriter[] writers = Arrays.copyOf(childWriters, Math.max(childWriters.length, childNo + 1));
+            writers[childNo] = new PrintWriter(child.getOutputStream(), true);
+            childWriters = writers; // publish the filled-in copy
+        }
+
+        // Child (stdout) → Parent
+        MessageReader reader = protocol.reader(child.getInputStream());
+
+        // Start a thread to read child's stdout
+        Threads.start("child-reader-" + childNo, false, () -> {
+            try {
+                while (reader.readNext(handler)) {
+                    // handled in callbacks
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    @Override
+    public void send(int childNo, String line) {
+        PrintWriter[] writers = childWriters;
+        PrintWriter w = childNo < writers.length ? writers[childNo] : null;
+        if (w != null) {
+            w.println(line);
+        }
+    }
+
+    @Override
+    public void close() {
+        // the pipes close with the child processes
+    }
+}
@@ -0,0 +1,35 @@
+package dev.yin.process;
+
+import java.nio.file.Path;
+
+import dev.yin.lib.TickStore;
+
+/**
+ * Appends every tick to a {@link TickStore}. Windows are not stored, and
+ * neither are late ticks, which keeps the records in time order.
+ */
+class StoreSink extends OutputSink {
+    private final TickStore store;
+
+    StoreSink(String name, int capacity, Path dir, int domain, int segmentRecords) {
+        super(name, capacity);
+        this.store = TickStore.open(dir, domain, segmentRecords);
+    }
+
+    @Override
+    void write(OutputEvent event) {
+        if (event.window == null && !event.late) {
+            store.append(event.timeMs, event.counts);
+        }
+    }
+
+    @Override
+    void flush() {
+        // records are in the page cache as soon as they are appended
+    }
+
+    @Override
+    void release() {
+        store.close();
+    }
+}
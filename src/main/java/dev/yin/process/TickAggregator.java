@@ -0,0 +1,163 @@
+package dev.yin.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.yin.lib.AdaptiveHistogram;
+import dev.yin.lib.CountMessage;
+import dev.yin.lib.MpscFlushQueue;
+import dev.yin.lib.Threads;
+
+/**
+ * Per-tick aggregation slots for pipelined COUNT rounds.
+ * <p>
+ * The scheduler {@link #open}s a tick (expected replies + deadline) and moves
+ * on without waiting; reader threads {@link #add} replies tagged with their
+ * tick. Both only enqueue into lock-free {@link MpscFlushQueue}s and unpark
+ * the single emitter thread, which owns all slots: it merges replies, and
+ * emits ticks strictly in order as soon as all replies arrived or the
+ * deadline expired. Several rounds can be in flight at once.
+ * <p>
+ * A reply for a tick that was already emitted is reported through
+ * {@link Listener#onLate}, never silently merged into another tick. So is
+ * a reply that overtook its tick's {@link #open} but whose tick is never
+ * opened (e.g. a retiring child answering past the last tick), once a
+ * later tick is emitted.
+ */
+class TickAggregator {
+
+    interface Listener {
+        /**
+         * @param missing number of expected replies that did not arrive before the deadline
+         */
+        void onTick(long tick, AdaptiveHistogram counts, int missing, long latencyUs);
+
+        void onLate(long tick, AdaptiveHistogram counts);
+    }
+
+    private static class Slot {
+        final long tick;
+        final int expected;
+        final long deadlineNs;
+        final long openedNs;
+        final AdaptiveHistogram counts;
+        int received = 0;
+
+        Slot(long tick, int expected, long deadlineNs, long openedNs, int domain) {
+            this.counts = new AdaptiveHistogram(domain);
+            this.tick = tick;
+            this.expected = expected;
+            this.deadlineNs = deadlineNs;
+            this.openedNs = openedNs;
+        }
+    }
+
+    private final Listener listener;
+    private final int domain;
+    private final MpscFlushQueue<Slot> opened = new MpscFlushQueue<>();
+    private final MpscFlushQueue<CountMessage> replies = new MpscFlushQueue<>();
+    private volatile Thread emitter;
+
+    // Emitter thread only
+    private final List<Slot> pending = new ArrayList<>();      // open ticks, oldest first
+    private final List<CountMessage> early = new ArrayList<>(); // replies whose open is not seen yet
+    private long lastEmittedTick = Long.MIN_VALUE;
+    private final Consumer<Slot> openEach = this::openSlot; // no method reference per wake-up
+    private final Consumer<CountMessage> mergeEach = this::merge;
+
+    TickAggregator(int domain, Listener listener) {
+        this.domain = domain;
+        this.listener = listener;
+    }
+
+    void start(String name) {
+        emitter = Threads.start(name, true, this::run);
+    }
+
+    /**
+     * Opens {@code tick}: it is emitted once {@code expected} replies arrived,
+     * or {@code deadlineMs} from now at the latest. Ticks must be opened in order.
+     */
+    void open(long tick, int expected, long deadlineMs) {
+        long now = System.nanoTime();
+        opened.offer(new Slot(tick, expected, now + deadlineMs * 1_000_000L, now, domain));
+        LockSupport.unpark(emitter);
+    }
+
+    void add(CountMessage msg) {
+        replies.offer(msg);
+        LockSupport.unpark(emitter);
+    }
+
+    private void run() {
+        while (true) {
+            opened.drain(openEach);
+            replies.drain(mergeEach);
+
+            // Emit in order: a complete head, or a head past its deadline
+            long now = System.nanoTime();
+            while (!pending.isEmpty()) {
+                Slot head = pending.get(0);
+                if (head.received < head.expected && now < head.deadlineNs) {
+                    break;
+                }
+                pending.remove(0);
+                lastEmittedTick = head.tick;
+                listener.onTick(head.tick, head.counts, head.expected - head.received,
+                    (now - head.openedNs) / 1000);
+                dropStale();
+            }
+
+            if (pending.isEmpty()) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, pending.get(0).deadlineNs - now);
+            }
+        }
+    }
+
+    private void openSlot(Slot slot) {
+        pending.add(slot);
+        for (int i = 0; i < early.size(); ) { // replies that overtook this open
+            CountMessage msg = early.get(i);
+            if (msg.getTick() == slot.tick) {
+                slot.counts.addAll(msg.getCounts());
+                slot.received++;
+                early.remove(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // Early replies whose tick was passed without being opened
+    private void dropStale() {
+        for (int i = 0; i < early.size(); ) {
+            CountMessage msg = early.get(i);
+            if (msg.getTick() <= lastEmittedTick) {
+                early.remove(i);
+                listener.onLate(msg.getTick(), msg.getCounts());
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private void merge(CountMessage msg) {
+        long tick = msg.getTick();
+        if (tick <= lastEmittedTick) {
+            listener.onLate(tick, msg.getCounts());
+            return;
+        }
+        for (Slot slot : pending) {
+            if (slot.tick == tick) {
+                slot.counts.addAll(msg.getCounts());
+                slot.received++;
+                return;
+            }
+        }
+        early.add(msg); // its open() is still in the queue
+    }
+}
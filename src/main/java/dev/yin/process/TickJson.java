@@ -0,0 +1,125 @@
+package dev.yin.process;
+
+import java.nio.ByteBuffer;
+
+import dev.yin.lib.AdaptiveHistogram;
+
+/**
+ * Encodes {@link OutputEvent}s as JSON lines straight into a
+ * {@link ByteBuffer}: ASCII digits are written in place, so a tick costs no
+ * {@code StringBuilder}, {@code String} or {@code byte[]}.
+ *
+ * Tick:   { "time": "S","counts": {"0": n, ...}, "missing": m, "late": true, "dropped": d, "total": t, "latencyUs": l }
+ * Window: { "window": "1m", "time": "S", "ticks": k, "counts": {...}, "total": t }
+ *
+ * {@code missing}, {@code late} and {@code dropped} only appear when set,
+ * {@code total} and {@code latencyUs} of a tick only in debug mode. Domains
+ * up to {@link #MAX_LISTED_DOMAIN} list every bucket, larger ones only the
+ * values seen, ascending.
+ */
+final class TickJson {
+    static final int MAX_LISTED_DOMAIN = 100;
+
+    private final int domain;
+    private final boolean debug;
+    private final byte[] digits = new byte[20];
+
+    TickJson(int domain, boolean debug) {
+        this.domain = domain;
+        this.debug = debug;
+    }
+
+    /** Upper bound of the encoded size of {@code event}. */
+    int maxBytes(OutputEvent event) {
+        int buckets = domain <= MAX_LISTED_DOMAIN ? domain : event.counts.cardinality();
+        return 256 + buckets * 48;
+    }
+
+    /**
+     * @param dropped events the sink dropped so far, reported on ticks when non-zero
+     */
+    void encode(OutputEvent event, long dropped, ByteBuffer buf) {
+        long timeSec = event.timeMs / 1000;
+        if (event.window != null) {
+            ascii(buf, "{ \"window\": \"");
+            ascii(buf, event.window);
+            ascii(buf, "\", \"time\": \"");
+            number(buf, timeSec);
+            ascii(buf, "\", \"ticks\": ");
+            number(buf, event.ticks);
+            ascii(buf, ", \"counts\": {");
+            counts(buf, event.counts);
+            ascii(buf, "}, \"total\": ");
+            number(buf, event.counts.total());
+            ascii(buf, " }\n");
+            return;
+        }
+
+        ascii(buf, "{ \"time\": \"");
+        number(buf, timeSec);
+        ascii(buf, "\",\"counts\": {");
+        counts(buf, event.counts);
+        buf.put((byte) '}');
+        // Tick closed by its deadline: some children's counts are not included
+        if (event.missing > 0) { ascii(buf, ", \"missing\": "); number(buf, event.missing); }
+        // Counts that arrived after their tick was emitted
+        if (event.late) { ascii(buf, ", \"late\": true"); }
+        // Output this sink could not keep up with
+        if (dropped > 0) { ascii(buf, ", \"dropped\": "); number(buf, dropped); }
+        // To check nums generated is expected or not
+        if (debug) { ascii(buf, ", \"total\": "); number(buf, event.counts.total()); }
+        // Time from the tick boundary until all counts were collected
+        if (debug) { ascii(buf, ", \"latencyUs\": "); number(buf, event.latencyUs); }
+        ascii(buf, " }\n");
+    }
+
+    private void counts(ByteBuffer buf, AdaptiveHistogram counts) {
+        if (domain <= MAX_LISTED_DOMAIN) { // every bucket, zeros included
+            for (int v = 0; v < domain; v++) {
+                if (v > 0) ascii(buf, ", ");
+                bucket(buf, v, counts.get(v));
+            }
+        } else if (counts.isDense()) { // only the values seen, ascending
+            boolean first = true;
+            for (int v = 0; v < domain; v++) {
+                long c = counts.get(v);
+                if (c == 0) continue;
+                if (!first) ascii(buf, ", ");
+                bucket(buf, v, c);
+                first = false;
+            }
+        } else {
+            int[] values = counts.sortedValues();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) ascii(buf, ", ");
+                bucket(buf, values[i], counts.get(values[i]));
+            }
+        }
+    }
+
+    private void bucket(ByteBuffer buf, int value, long count) {
+        buf.put((byte) '"');
+        number(buf, value);
+        ascii(buf, "\": ");
+        number(buf, count);
+    }
+
+    private void number(ByteBuffer buf, long n) {
+        if (n < 0) {
+            buf.put((byte) '-');
+            n = -n;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        buf.put(digits, i, digits.length - i);
+    }
+
+    private static void ascii(ByteBuffer buf, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            buf.put((byte) s.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package dev.yin.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.yin.lib.Threads;
+
+/**
+ * Drives all of a child's generators from a few threads, each owning a
+ * hashed timing wheel.
+ * <p>
+ * Generators are pinned round-robin to one wheel thread (default: one per
+ * core), so each buffer keeps a single producer. A wheel has
+ * {@value #WHEEL_SIZE} slots of {@code tickNs}; a generator sits in the slot
+ * of its next deadline, and generators whose deadline lies more than one
+ * revolution ahead simply stay in their slot until their round comes.
+ * Initial deadlines are staggered over one interval so the generators do not
+ * all fire in the same tick.
+ *
+ * <h3>Catch-up</h3>
+ * If a wheel thread falls behind (GC pause, descheduling), a generator fires
+ * once for every interval it missed before being rescheduled, so the
+ * long-run rate stays exactly one value per interval.
+ */
+class TimingWheelGeneratorEngine implements GeneratorEngine {
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final long intervalNs;
+    private final long tickNs;
+    private final int threadCount;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private static class Entry {
+        final Generator generator;
+        long deadline;
+        Entry next;
+
+        Entry(Generator generator, long deadline) {
+            this.generator = generator;
+            this.deadline = deadline;
+        }
+    }
+
+    TimingWheelGeneratorEngine(long intervalNs, int threadCount) {
+        this.intervalNs = intervalNs;
+        this.tickNs = Math.max(1, Math.min(intervalNs, 1_000_000L)); // at most 1 ms
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public void start(Generator[] generators) {
+        int wheels = Math.min(threadCount, Math.max(1, generators.length));
+        long start = System.nanoTime();
+
+        for (int w = 0; w < wheels; w++) {
+            Entry[] wheel = new Entry[WHEEL_SIZE];
+            for (int i = w; i < generators.length; i += wheels) {
+                long deadline = start + intervalNs * i / generators.length; // stagger
+                insert(wheel, new Entry(generators[i], deadline));
+            }
+
+            threads.add(Threads.start("generator-wheel-" + w, true, () -> runWheel(wheel, start)));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        for (Thread t : threads) { LockSupport.unpark(t); }
+        try {
+            for (Thread t : threads) { t.join(); }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWheel(Entry[] wheel, long start) {
+        long tick = start / tickNs; // next tick to process
+
+        while (running) {
+            long now = System.nanoTime();
+            long nowTick = now / tickNs;
+
+            // Process every tick up to now, at most one full revolution
+            for (long t = Math.max(tick, nowTick - MASK); t <= nowTick; t++) {
+                int slot = (int) (t & MASK);
+                Entry e = wheel[slot];
+                wheel[slot] = null;
+
+                while (e != null) {
+                    Entry next = e.next;
+                    // Fire everything due up to the current tick, catching up on missed intervals
+                    while (e.deadline / tickNs <= nowTick) {
+                        e.generator.generate();
+                        e.deadline += intervalNs;
+                    }
+                    insert(wheel, e); // same slot again if its round has not come yet
+                    e = next;
+                }
+            }
+            tick = nowTick + 1;
+
+            long sleep = tick * tickNs - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+        }
+    }
+
+    private void insert(Entry[] wheel, Entry e) {
+        int slot = (int) ((e.deadline / tickNs) & MASK);
+        e.next = wheel[slot];
+        wheel[slot] = e;
+    }
+}
@@ -0,0 +1,21 @@
+package dev.yin.process;
+
+/**
+ * Parent-side connection to all children.
+ * <p>
+ * A transport carries commands (Parent → Child, text lines) and delivers
+ * decoded messages (Child → Parent) to the {@link dev.yin.lib.MessageHandler}
+ * it was created with.
+ */
+interface Transport {
+    /** Called before child {@code childNo} is started: add arguments, set redirects. */
+    void prepare(int childNo, ProcessBuilder pb);
+
+    /** Called right after child {@code childNo} has been started. */
+    void attach(int childNo, Process child);
+
+    /** Sends one command line to child {@code childNo}. */
+    void send(int childNo, String line);
+
+    void close();
+}
@@ -0,0 +1,350 @@
+package dev.yin.process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Set;
+
+import dev.yin.lib.BinaryCodec;
+import dev.yin.lib.CountMessage;
+import dev.yin.lib.LogMessage;
+import dev.yin.lib.MessageHandler;
+import dev.yin.lib.ReadyMessage;
+
+/**
+ * Unix domain socket transport served by a single NIO {@link Selector} thread.
+ * <p>
+ * The parent binds a socket file and passes its path to every child with
+ * {@code --socket=path}. Children connect, identify themselves with their
+ * READY frame, and from then on exchange commands and {@link BinaryCodec}
+ * frames over the socket. All children are read by one thread into
+ * per-connection direct {@link ByteBuffer}s, so the parent needs no thread
+ * per child.
+ * <p>
+ * {@link #send} never waits for a child: what its socket buffer does not
+ * take is queued on the connection and written by the selector thread when
+ * the socket becomes writable. A child that stops reading (e.g. a stopped
+ * process) only fills its own queue; past {@link #MAX_PENDING_BYTES} its
+ * commands are dropped, and a missing COUNT reply is then handled like any
+ * other by the tick deadline.
+ */
+class UnixSocketTransport implements Transport {
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    private final MessageHandler handler;
+    private final Path socketPath;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private volatile Connection[] connections; // by child number, grows when children are added
+    private volatile boolean closed = false;
+
+    private static class Connection {
+        final SocketChannel channel;
+        MessageHandler handler;
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+
+        // Guarded by this
+        final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        int pendingBytes = 0;
+        long droppedCommands = 0;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    UnixSocketTransport(int childProcessCount, MessageHandler handler) {
+        this.connections = new Connection[childProcessCount];
+        try {
+            Path dir = Files.createTempDirectory("multi-process-test");
+            this.socketPath = dir.resolve("parent.sock");
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            server.configureBlocking(false);
+            this.selector = Selector.open();
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.handler = handler;
+        // Always a platform thread: a virtual thread blocked in select() would pin its carrier
+        Thread t = new Thread(this::selectLoop, "uds-selector");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void prepare(int childNo, ProcessBuilder pb) {
+        pb.command().add("--socket=" + socketPath);
+        // Nothing is read from the child's stdout in this mode
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    }
+
+    @Override
+    public void attach(int childNo, Process child) {
+        // the child connects by itself and is bound to childNo by its READY frame
+    }
+
+    /**
+     * Writes what the socket takes right away and queues the rest for the
+     * selector thread; never blocks.
+     */
+    @Override
+    public void send(int childNo, String line) {
+        Connection[] cs = connections;
+        Connection conn = childNo < cs.length ? cs[childNo] : null;
+        if (conn == null) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        synchronized (conn) {
+            if (!conn.key.isValid()) {
+                return; // closed by the selector thread, the child is gone
+            }
+            try {
+                if (conn.pending.isEmpty()) {
+                    conn.channel.write(buf);
+                    if (!buf.hasRemaining()) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            if (conn.pendingBytes + buf.remaining() > MAX_PENDING_BYTES) {
+                if (conn.droppedCommands++ == 0) {
+                    System.err.println("Child " + childNo + " is not reading its socket, dropping commands");
+                }
+                return;
+            }
+            conn.pending.addLast(buf);
+            conn.pendingBytes += buf.remaining();
+            if (conn.pending.size() == 1) {
+                conn.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                selector.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            selector.close();
+            server.close();
+            Files.deleteIfExists(socketPath);
+            Files.deleteIfExists(socketPath.getParent());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void selectLoop() {
+        while (!closed) {
+            Set<SelectionKey> selected;
+            try {
+                selector.select();
+                selected = selector.selectedKeys();
+            } catch (Exception e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+            for (SelectionKey key : selected) {
+                // One failing connection (bad frame, reset) must not end the loop for every child
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if (key.isWritable()) {
+                        flush(key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                } catch (Exception e) {
+                    if (closed) {
+                        return;
+                    }
+                    e.printStackTrace();
+                    drop(key);
+                }
+            }
+            selected.clear();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = server.accept();
+        if (ch == null) {
+            return;
+        }
+        ch.configureBlocking(false);
+        Connection conn = new Connection(ch);
+        conn.handler = new BindingHandler(conn);
+        conn.key = ch.register(selector, SelectionKey.OP_READ, conn);
+    }
+
+    // Writes queued commands until the socket is full again
+    private void flush(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        synchronized (conn) {
+            ByteBuffer buf;
+            while ((buf = conn.pending.peekFirst()) != null) {
+                int n = conn.channel.write(buf);
+                conn.pendingBytes -= n;
+                if (buf.hasRemaining()) {
+                    return; // still full, stay interested in OP_WRITE
+                }
+                conn.pending.removeFirst();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private static void drop(SelectionKey key) {
+        key.cancel();
+        if (key.attachment() instanceof Connection) {
+            try {
+                ((Connection) key.attachment()).channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        int n = conn.channel.read(conn.in);
+        if (n < 0) { // child closed its end
+            drop(key);
+            return;
+        }
+
+        ByteBuffer in = conn.in;
+        in.flip();
+        while (in.remaining() >= 4) {
+            int start = in.position();
+            int length = in.getInt(start);
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+
+            int end = start + 4 + length;
+            int limit = in.limit();
+            in.position(start + 4).limit(end);
+            BinaryCodec.decode(in, conn.handler);
+            in.limit(limit).position(end);
+        }
+        in.compact();
+
+        // A frame larger than the buffer: grow it
+        if (!in.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(in.capacity() * 2);
+            in.flip();
+            bigger.put(in);
+            conn.in = bigger;
+        }
+    }
+
+    // Binds the channel to its child number when the READY frame arrives.
+    private class BindingHandler implements MessageHandler {
+        private final Connection conn;
+
+        BindingHandler(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public void onReady(ReadyMessage msg) {
+            synchronized (UnixSocketTransport.this) {
+                Connection[] cs = Arrays.copyOf(connections, Math.max(connections.length, msg.getProcess() + 1));
+                cs[msg.getProcess()] = conn;
+                connections = cs; // publish the filled-in copy
+            }
+            handler.onReady(msg);
+        }
+
+        @Override
+        public void onCount(CountMessage msg) {
+            handler.onCount(msg);
+        }
+
+        @Override
+        public void onLog(LogMessage msg) {
+            handler.onLog(msg);
+        }
+    }
+
+    /**
+     * Child side: connects to the parent's socket.
+     */
+    static SocketChannel connect(String path) {
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Child side stream over the channel.
+     * <p>
+     * {@code Channels.newInputStream/newOutputStream} lock the channel's
+     * blocking lock for the whole call, so a pending read would block every
+     * write. These adapters call {@code read}/{@code write} directly.
+     */
+    static InputStream inputStream(SocketChannel ch) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return ch.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    static OutputStream outputStream(SocketChannel ch) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package dev.yin.process;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.channels.SocketChannel;
+
+import dev.yin.lib.MessageWriter;
+import dev.yin.lib.Protocol;
+
+/**
+ * Child side of the {@link Transport}: where commands come from and where
+ * messages go to, as selected by {@code --transport} and {@code --protocol}.
+ */
+class Uplink {
+    final InputStream commandIn;
+    final MessageWriter out;
+
+    private Uplink(InputStream commandIn, MessageWriter out) {
+        this.commandIn = commandIn;
+        this.out = out;
+    }
+
+    static Uplink open(Options options) {
+        Protocol protocol = Protocol.fromString(options.get("protocol", "text"));
+        String transport = options.get("transport", "stdio");
+        switch (transport) {
+            case "stdio":
+            case "shm":
+                return new Uplink(System.in, protocol == Protocol.TEXT
+                    ? protocol.writer(System.out)
+                    : protocol.writer(new FileOutputStream(FileDescriptor.out))); // raw stdout, no PrintStream
+            case "uds":
+                SocketChannel ch = UnixSocketTransport.connect(options.get("socket", null));
+                return new Uplink(
+                    UnixSocketTransport.inputStream(ch),
+                    Protocol.BINARY.writer(UnixSocketTransport.outputStream(ch)));
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package dev.yin.lib;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveHistogramTest {
+
+    private static final int DOMAIN = 80_000; // sparse at first, dense above 10 000 distinct values
+
+    @Test
+    void smallDomainsAreDense() {
+        assertTrue(new AdaptiveHistogram(AdaptiveHistogram.DENSE_DOMAIN).isDense());
+        assertFalse(new AdaptiveHistogram(AdaptiveHistogram.DENSE_DOMAIN + 1).isDense());
+    }
+
+    @Test
+    void turnsDenseAboveAnEighthOfTheDomain() {
+        AdaptiveHistogram h = new AdaptiveHistogram(DOMAIN);
+        long[] expected = new long[DOMAIN];
+        for (int i = 0; i < DOMAIN / 8; i++) {
+            int v = spread(i);
+            h.add(v, i + 1);
+            h.increment(v); // an existing key does not count as a new one
+            expected[v] += i + 2;
+        }
+        assertFalse(h.isDense());
+        assertEquals(DOMAIN / 8, h.cardinality());
+
+        int v = spread(DOMAIN / 8);
+        h.increment(v);
+        expected[v]++;
+        assertTrue(h.isDense());
+        assertCounts(expected, h);
+    }
+
+    @Test
+    void addAllMergesAcrossModes() {
+        AdaptiveHistogram sparse = filled(100, 1);
+        AdaptiveHistogram dense = filled(DOMAIN / 8 + 1, 2);
+        assertFalse(sparse.isDense());
+        assertTrue(dense.isDense());
+
+        AdaptiveHistogram intoSparse = filled(100, 1);
+        intoSparse.addAll(dense);
+        AdaptiveHistogram intoDense = filled(DOMAIN / 8 + 1, 2);
+        intoDense.addAll(sparse);
+
+        long[] expected = new long[DOMAIN];
+        sparse.copyTo(expected);
+        dense.forEach((v, c) -> expected[v] += c);
+        assertCounts(expected, intoSparse);
+        assertCounts(expected, intoDense);
+        assertTrue(intoSparse.isDense());
+
+        // Two sparse ones whose union crosses the threshold
+        AdaptiveHistogram a = filled(DOMAIN / 16, 1);
+        AdaptiveHistogram b = new AdaptiveHistogram(DOMAIN);
+        for (int i = DOMAIN / 16; i < DOMAIN / 8 + 10; i++) {
+            b.add(spread(i), 5);
+        }
+        assertFalse(a.isDense());
+        assertFalse(b.isDense());
+        long[] union = new long[DOMAIN];
+        a.copyTo(union);
+        b.forEach((v, c) -> union[v] += c);
+        a.addAll(b);
+        assertTrue(a.isDense());
+        assertCounts(union, a);
+    }
+
+    @Test
+    void clearEmptiesBothModes() {
+        for (AdaptiveHistogram h : new AdaptiveHistogram[] { filled(100, 1), filled(DOMAIN / 8 + 1, 1) }) {
+            h.clear();
+            assertEquals(0, h.total());
+            assertEquals(0, h.cardinality());
+            h.increment(7);
+            assertEquals(1, h.get(7));
+        }
+    }
+
+    // Values far apart, so the map probes like it would with real IDs
+    private static int spread(int i) {
+        return (int) ((i * 7919L) % DOMAIN);
+    }
+
+    private static AdaptiveHistogram filled(int distinct, long count) {
+        AdaptiveHistogram h = new AdaptiveHistogram(DOMAIN);
+        for (int i = 0; i < distinct; i++) {
+            h.add(spread(i), count);
+        }
+        return h;
+    }
+
+    private static void assertCounts(long[] expected, AdaptiveHistogram h) {
+        long total = 0;
+        int cardinality = 0;
+        for (int v = 0; v < expected.length; v++) {
+            assertEquals(expected[v], h.get(v), "count of value " + v);
+            total += expected[v];
+            cardinality += expected[v] != 0 ? 1 : 0;
+        }
+        assertEquals(total, h.total());
+        assertEquals(cardinality, h.cardinality());
+    }
+}
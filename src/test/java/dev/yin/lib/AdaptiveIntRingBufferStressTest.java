@@ -0,0 +1,204 @@
+package dev.yin.lib;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveIntRingBufferStressTest {
+
+    private static final int DOMAIN = 1 << 10;
+    private static final int ITEMS = DOMAIN * 4096;
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void dropNewestAccountsForEveryValue() throws InterruptedException {
+        AdaptiveIntRingBuffer buffer = new AdaptiveIntRingBuffer(256, OverflowPolicy.DROP_NEWEST, 256, 0);
+        long[] dropped = new long[1];
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                if (!buffer.write(i & (DOMAIN - 1))) {
+                    dropped[0]++;
+                }
+            }
+        });
+        long[] histogram = drainWhile(producer, buffer);
+
+        assertEquals(ITEMS, sum(histogram) + dropped[0]);
+        assertEquals(0, buffer.overwritten());
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void overwriteOldestAccountsForEveryValue() throws InterruptedException {
+        AdaptiveIntRingBuffer buffer = new AdaptiveIntRingBuffer(256, OverflowPolicy.OVERWRITE_OLDEST, 256, 0);
+        int[] batch = new int[100]; // not a divisor of the capacity, so batches wrap
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = (i * 7) & (DOMAIN - 1);
+        }
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS / 2; i++) {
+                assertTrue(buffer.write(i & (DOMAIN - 1)));
+            }
+            for (int i = 0; i < ITEMS / 2 / batch.length; i++) {
+                assertEquals(batch.length, buffer.write(batch, 0, batch.length));
+            }
+        });
+        long[] histogram = drainWhile(producer, buffer);
+
+        long written = ITEMS / 2 + (long) (ITEMS / 2 / batch.length) * batch.length;
+        assertEquals(written, sum(histogram) + buffer.overwritten());
+    }
+
+    @Test
+    void spillKeepsEverythingUpToTheSegmentLimit() {
+        int segments = 4;
+        AdaptiveIntRingBuffer buffer = new AdaptiveIntRingBuffer(256, OverflowPolicy.SPILL, 256, segments);
+
+        int fits = 256 * (1 + segments); // the ring plus every segment
+        for (int i = 0; i < fits; i++) {
+            assertTrue(buffer.write(i & (DOMAIN - 1)), "write " + i);
+        }
+        assertFalse(buffer.write(0)); // over the limit
+        assertEquals(256L * segments, buffer.spilled());
+
+        long[] histogram = new long[DOMAIN];
+        assertEquals(fits, buffer.drainTo(histogram));
+        for (int v = 0; v < DOMAIN; v++) {
+            assertEquals(v < fits % DOMAIN ? fits / DOMAIN + 1 : fits / DOMAIN, histogram[v], "count of value " + v);
+        }
+
+        // Drained segments are given back
+        for (int i = 0; i < fits; i++) {
+            assertTrue(buffer.write(i & (DOMAIN - 1)), "write " + i + " after drain");
+        }
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void spillLosesAndDuplicatesNothing() throws InterruptedException {
+        AdaptiveIntRingBuffer buffer = new AdaptiveIntRingBuffer(256, OverflowPolicy.SPILL, 256, 4);
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                while (!buffer.write(i & (DOMAIN - 1))) {
+                    Thread.yield(); // retry past the segment limit instead of dropping
+                }
+            }
+        });
+        long[] histogram = drainWhile(producer, buffer);
+
+        assertExact(histogram);
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void blockLosesAndDuplicatesNothing() throws InterruptedException {
+        AdaptiveIntRingBuffer buffer = new AdaptiveIntRingBuffer(256, OverflowPolicy.BLOCK, 256, 0);
+        int[] batch = new int[DOMAIN];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = i;
+        }
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS / 2; i++) {
+                while (!buffer.write(i & (DOMAIN - 1))) {
+                    Thread.yield(); // only after MAX_BLOCK_NS, if the consumer was descheduled
+                }
+            }
+            for (int i = 0; i < ITEMS / 2 / batch.length; i++) {
+                int n = 0;
+                while (n < batch.length) {
+                    n += buffer.write(batch, n, batch.length - n);
+                }
+            }
+        });
+        long[] histogram = drainWhile(producer, buffer);
+
+        assertExact(histogram);
+        assertTrue(buffer.paused() > 0);
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void resizingLosesAndDuplicatesNothing() throws InterruptedException {
+        AdaptiveIntRingBuffer buffer = new AdaptiveIntRingBuffer(1024, OverflowPolicy.DROP_NEWEST, 1 << 16, 0);
+        int[] batch = new int[DOMAIN];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = i;
+        }
+
+        Thread producer = new Thread(() -> {
+            for (int round = 0; round < ITEMS / DOMAIN / 64; round++) {
+                // A burst makes drains find the ring full (grow), a trickle nearly empty (shrink)
+                int size = (round / 8) % 2 == 0 ? 64 : 1;
+                for (int b = 0; b < size; b++) {
+                    for (int i = 0; i < DOMAIN; i++) {
+                        while (!buffer.write(i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+                for (int b = size; b < 64; b++) {
+                    int n = 0;
+                    while (n < batch.length) {
+                        n += buffer.write(batch, n, batch.length - n);
+                        if (n < batch.length) Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        long[] histogram = new long[DOMAIN];
+        int min = buffer.capacity();
+        int max = min;
+        while (producer.isAlive()) {
+            buffer.drainTo(histogram);
+            min = Math.min(min, buffer.capacity());
+            max = Math.max(max, buffer.capacity());
+            Thread.sleep(0, 100_000);
+        }
+        producer.join();
+        buffer.drainTo(histogram);
+
+        assertExact(histogram);
+        assertTrue(max > 1024, "never grew");
+        assertTrue(min < max, "never shrank");
+        for (int i = 0; i < 10; i++) {
+            buffer.drainTo(histogram); // empty drains shrink it back
+        }
+        assertTrue(buffer.capacity() < max, "never shrank");
+    }
+
+    // Runs producer and drains until it finished and the buffer is empty
+    private static long[] drainWhile(Thread producer, AdaptiveIntRingBuffer buffer) throws InterruptedException {
+        producer.start();
+        long[] histogram = new long[DOMAIN];
+        while (producer.isAlive()) {
+            if (buffer.drainTo(histogram) == 0) Thread.yield();
+        }
+        producer.join();
+        buffer.drainTo(histogram);
+        assertEquals(0, buffer.drainTo(histogram));
+        return histogram;
+    }
+
+    private static void assertExact(long[] histogram) {
+        assertEquals(ITEMS, sum(histogram));
+        for (int v = 0; v < DOMAIN; v++) {
+            assertEquals(ITEMS / DOMAIN, histogram[v], "count of value " + v);
+        }
+    }
+
+    private static long sum(long[] histogram) {
+        long sum = 0;
+        for (long c : histogram) {
+            sum += c;
+        }
+        return sum;
+    }
+}
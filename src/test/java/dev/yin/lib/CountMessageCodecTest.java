@@ -0,0 +1,97 @@
+package dev.yin.lib;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountMessageCodecTest {
+
+    @Test
+    void textRoundTrip() {
+        for (AdaptiveHistogram h : histograms()) {
+            CountMessage msg = new CountMessage(3, 42, h);
+            CountMessage back = CountMessage.fromIpc(msg.toIpc());
+            assertEquals(3, back.getProcess());
+            assertEquals(42, back.getTick());
+            assertSameCounts(h, back.getCounts());
+        }
+    }
+
+    @Test
+    void binaryRoundTrip() {
+        for (AdaptiveHistogram h : histograms()) {
+            CountMessage msg = new CountMessage(3, 42, h);
+            ByteBuffer buf = ByteBuffer.allocate(BinaryCodec.maxFrameBytes(h));
+            BinaryCodec.encode(msg, buf);
+            buf.flip();
+            assertEquals(buf.remaining() - 4, buf.getInt()); // length prefix
+
+            CountMessage[] back = new CountMessage[1];
+            BinaryCodec.decode(buf, new MessageHandler() {
+                @Override
+                public void onReady(ReadyMessage m) {
+                    fail("READY");
+                }
+
+                @Override
+                public void onCount(CountMessage m) {
+                    back[0] = m;
+                }
+
+                @Override
+                public void onLog(LogMessage m) {
+                    fail("LOG");
+                }
+            });
+            assertFalse(buf.hasRemaining());
+            assertEquals(3, back[0].getProcess());
+            assertEquals(42, back[0].getTick());
+            assertSameCounts(h, back[0].getCounts());
+        }
+    }
+
+    @Test
+    void varintEdgeValues() {
+        long[] values = { 0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, Long.MAX_VALUE };
+        int[] bytes = { 1, 1, 1, 2, 2, 3, 5, 9 };
+        for (int i = 0; i < values.length; i++) {
+            ByteBuffer buf = ByteBuffer.allocate(10);
+            BinaryCodec.putVarLong(buf, values[i]);
+            assertEquals(bytes[i], buf.position(), "bytes of " + values[i]);
+            buf.flip();
+            assertEquals(values[i], BinaryCodec.getVarLong(buf));
+            assertFalse(buf.hasRemaining());
+        }
+    }
+
+    // Empty, sparse (with the domain's edges and a huge count), small dense, and large dense
+    private static AdaptiveHistogram[] histograms() {
+        AdaptiveHistogram empty = new AdaptiveHistogram(1_000_000);
+
+        AdaptiveHistogram sparse = new AdaptiveHistogram(1_000_000);
+        sparse.add(0, 128);
+        sparse.add(999_999, Long.MAX_VALUE);
+        sparse.add(123_456, 127);
+        sparse.increment(500_000);
+
+        AdaptiveHistogram digits = new AdaptiveHistogram(10);
+        for (int v = 0; v < 10; v++) {
+            digits.add(v, v * 1000L);
+        }
+
+        AdaptiveHistogram dense = new AdaptiveHistogram(10_000);
+        for (int v = 0; v < 10_000; v += 3) {
+            dense.add(v, v + 1);
+        }
+        assertFalse(sparse.isDense());
+        assertTrue(dense.isDense());
+        return new AdaptiveHistogram[] { empty, sparse, digits, dense };
+    }
+
+    private static void assertSameCounts(AdaptiveHistogram expected, AdaptiveHistogram actual) {
+        assertEquals(expected.domain(), actual.domain());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        expected.forEach((v, c) -> assertEquals(c, actual.get(v), "count of value " + v));
+    }
+}
@@ -0,0 +1,99 @@
+package dev.yin.lib;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferStressTest {
+
+    private static final int DOMAIN = 1 << 10;
+    private static final int ITEMS = DOMAIN * 4096;
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void intRingBufferLosesAndDuplicatesNothing() throws InterruptedException {
+        IntRingBuffer buffer = new IntRingBuffer(256); // small, so it is full most of the time
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                while (!buffer.write(i & (DOMAIN - 1))) {
+                    Thread.yield(); // retry instead of dropping
+                }
+            }
+        });
+        producer.start();
+
+        long[] histogram = new long[DOMAIN];
+        long drained = 0;
+        while (drained < ITEMS) {
+            int n = buffer.drainTo(histogram);
+            if (n == 0) Thread.yield();
+            drained += n;
+        }
+        producer.join();
+
+        assertEquals(ITEMS, drained);
+        assertEquals(0, buffer.drainTo(histogram));
+        for (int v = 0; v < DOMAIN; v++) {
+            assertEquals(ITEMS / DOMAIN, histogram[v], "count of value " + v);
+        }
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void ringBufferDeliversEveryValueInOrder() throws InterruptedException {
+        RingBuffer<Integer> buffer = new RingBuffer<>(256);
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                Integer value = i;
+                while (!buffer.write(value)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        int expected = 0;
+        while (expected < ITEMS) {
+            List<Integer> values = buffer.flush();
+            if (values.isEmpty()) Thread.yield();
+            for (Integer v : values) {
+                assertEquals(expected, v.intValue()); // no gap, no duplicate, no reorder
+                expected++;
+            }
+        }
+        producer.join();
+
+        assertTrue(buffer.flush().isEmpty());
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void epochHistogramLosesAndDuplicatesNothing() throws InterruptedException {
+        EpochHistogram histogram = new EpochHistogram(DOMAIN);
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                histogram.write(i & (DOMAIN - 1));
+            }
+        });
+        producer.start();
+
+        long[] counts = new long[DOMAIN];
+        while (producer.isAlive()) {
+            histogram.drainTo(counts);
+            Thread.yield();
+        }
+        producer.join();
+        histogram.drainTo(counts);
+        histogram.drainTo(counts); // both sides of the double buffer
+
+        for (int v = 0; v < DOMAIN; v++) {
+            assertEquals(ITEMS / DOMAIN, counts[v], "count of value " + v);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package dev.yin.lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TickStoreTest {
+
+    private static final int DOMAIN = 8;
+    private static final long BASE_MS = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenResumesAfterTheLastCompleteRecord() throws IOException {
+        int n = 150; // past two index entries
+        try (TickStore store = TickStore.open(dir, DOMAIN, 200)) {
+            for (int i = 0; i < n; i++) {
+                store.append(time(i), record(i));
+            }
+        }
+
+        // Tear the last record: its checksum is written last, so zero it
+        Path segment = onlySegment();
+        long recordBytes = 8 + 8 * DOMAIN + 8;
+        long records = 16 + 8 * ((200 + TickStore.INDEX_EVERY - 1) / TickStore.INDEX_EVERY);
+        long checksum = records + (n - 1) * recordBytes + 8 + 8 * DOMAIN;
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(8), checksum);
+        }
+        assertEquals(n - 1, TickStore.query(dir, 0, Long.MAX_VALUE).ticks);
+
+        try (TickStore store = TickStore.open(dir, DOMAIN, 200)) {
+            store.append(time(n), record(n));
+        }
+
+        // The new record took the torn one's place, right after record n - 2
+        assertEquals(segment, onlySegment());
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer time = ByteBuffer.allocate(8);
+            ch.read(time, records + (n - 1) * recordBytes);
+            assertEquals(time(n), time.flip().getLong());
+        }
+        TickStore.Result all = TickStore.query(dir, 0, Long.MAX_VALUE);
+        assertEquals(n, all.ticks);
+        long[] expected = expected(0, n - 1);
+        add(expected, n);
+        assertArrayEquals(expected, all.counts);
+    }
+
+    @Test
+    void queryAddsUpAcrossSegmentsAndIndexEntries() throws IOException {
+        int n = 250;
+        try (TickStore store = TickStore.open(dir, DOMAIN, 100)) { // segments of 100: rolls at 100 and 200
+            for (int i = 0; i < n; i++) {
+                store.append(time(i), record(i));
+            }
+        }
+        assertEquals(3, segments().size());
+
+        int[][] ranges = {
+            { 0, n }, { 10, 230 }, { 63, 65 }, { 64, 128 }, { 70, 170 }, { 99, 101 }, { 100, 200 },
+            { 164, 165 }, { 199, 250 }, { 249, 250 }, { 120, 120 },
+        };
+        for (int[] r : ranges) {
+            TickStore.Result result = TickStore.query(dir, time(r[0]), time(r[1]));
+            String range = "[" + r[0] + ", " + r[1] + ")";
+            assertEquals(r[1] - r[0], result.ticks, "ticks in " + range);
+            assertArrayEquals(expected(r[0], r[1]), result.counts, "counts in " + range);
+        }
+        assertEquals(0, TickStore.query(dir, time(n), time(n + 10)).ticks);
+        assertEquals(0, TickStore.query(dir, 0, time(0)).ticks);
+    }
+
+    private static long time(int i) {
+        return BASE_MS + 1000L * i;
+    }
+
+    // Record i counts i + 1 of value i % DOMAIN and one of value 0
+    private static AdaptiveHistogram record(int i) {
+        AdaptiveHistogram h = new AdaptiveHistogram(DOMAIN);
+        h.add(i % DOMAIN, i + 1);
+        h.increment(0);
+        return h;
+    }
+
+    private static long[] expected(int from, int to) {
+        long[] counts = new long[DOMAIN];
+        for (int i = from; i < to; i++) {
+            add(counts, i);
+        }
+        return counts;
+    }
+
+    private static void add(long[] counts, int i) {
+        counts[i % DOMAIN] += i + 1;
+        counts[0]++;
+    }
+
+    private Path onlySegment() throws IOException {
+        List<Path> segments = segments();
+        assertEquals(1, segments.size());
+        return segments.get(0);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
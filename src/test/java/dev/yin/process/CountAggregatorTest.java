@@ -0,0 +1,139 @@
+package dev.yin.process;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.yin.lib.AdaptiveIntRingBuffer;
+import dev.yin.lib.CountMessage;
+import dev.yin.lib.EventCounters;
+import dev.yin.lib.IntBuffer;
+import dev.yin.lib.LogMessage;
+import dev.yin.lib.MessageWriter;
+import dev.yin.lib.OverflowPolicy;
+import dev.yin.lib.ReadyMessage;
+import dev.yin.lib.SharedCountTable;
+
+/**
+ * A producer blocked on a full BLOCK buffer asks the aggregator for early
+ * drains; whatever mode consumes the buffers, every value must come out
+ * exactly once. The COUNT thread is started as in {@link ChildProcess}, so
+ * it is around to steal drain requests it must not serve.
+ */
+class CountAggregatorTest {
+
+    private static final int DOMAIN = 64;
+    private static final int ITEMS = DOMAIN * 16_384;
+    private static final int INTERVAL_MS = 200; // many full buffers per interval
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void pushModeCountsEveryBlockedValueOnce() throws InterruptedException {
+        Collector out = new Collector();
+        CountAggregator[] aggregator = new CountAggregator[1];
+        IntBuffer buffer = blockingBuffer(aggregator);
+        aggregator[0] = new CountAggregator(0, new IntBuffer[] { buffer }, out, DOMAIN,
+            new EventCounters(Generator.EVENTS), "block");
+        aggregator[0].start();
+        aggregator[0].startPushing(System.currentTimeMillis(), INTERVAL_MS, 0);
+
+        produce(buffer);
+
+        long[] counts = awaitTotal(out::counts);
+        Thread.sleep(2 * INTERVAL_MS); // nothing more may show up
+        assertExact(out.counts());
+        assertExact(counts);
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void publishModeCountsEveryBlockedValueOnce() throws InterruptedException {
+        SharedCountTable table = SharedCountTable.create(dir.resolve("counts"), 1, DOMAIN);
+        CountAggregator[] aggregator = new CountAggregator[1];
+        IntBuffer buffer = blockingBuffer(aggregator);
+        aggregator[0] = new CountAggregator(0, new IntBuffer[] { buffer }, new Collector(), DOMAIN,
+            new EventCounters(Generator.EVENTS), "block");
+        aggregator[0].start();
+        aggregator[0].startPublishing(table, INTERVAL_MS, 1000);
+
+        produce(buffer);
+
+        long[] published = new long[DOMAIN];
+        awaitTotal(() -> {
+            table.read(0, published);
+            return published.clone();
+        });
+        Thread.sleep(2 * INTERVAL_MS);
+        table.read(0, published);
+        assertExact(published);
+    }
+
+    private static IntBuffer blockingBuffer(CountAggregator[] aggregator) {
+        return new AdaptiveIntRingBuffer(256, OverflowPolicy.BLOCK, 256, 0, () -> aggregator[0].requestDrain());
+    }
+
+    private static void produce(IntBuffer buffer) throws InterruptedException {
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                while (!buffer.write(i % DOMAIN)) {
+                    Thread.yield(); // only after MAX_BLOCK_NS without a drain
+                }
+            }
+        });
+        producer.start();
+        producer.join();
+    }
+
+    private interface Snapshot {
+        long[] get();
+    }
+
+    private static long[] awaitTotal(Snapshot snapshot) throws InterruptedException {
+        while (true) {
+            long[] counts = snapshot.get();
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total >= ITEMS) {
+                return counts;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void assertExact(long[] counts) {
+        for (int v = 0; v < DOMAIN; v++) {
+            assertEquals(ITEMS / DOMAIN, counts[v], "count of value " + v);
+        }
+    }
+
+    // Sums every COUNT message sent
+    private static class Collector implements MessageWriter {
+        private final long[] counts = new long[DOMAIN];
+
+        @Override
+        public void send(ReadyMessage msg) {
+        }
+
+        @Override
+        public synchronized void send(CountMessage msg) {
+            msg.getCounts().forEach((v, c) -> counts[v] += c);
+        }
+
+        @Override
+        public void send(LogMessage msg) {
+        }
+
+        synchronized long[] counts() {
+            return counts.clone();
+        }
+    }
+}